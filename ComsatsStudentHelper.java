@@ -1,17 +1,64 @@
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
+import javax.swing.event.TableModelEvent;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.io.*;
+import java.lang.ref.Reference;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32C;
 
 class User {
     private String username;
@@ -143,6 +190,252 @@ class UserManager {
     }
 }
 
+enum Grade {
+    A_PLUS("A+"), A("A"), A_MINUS("A-"), B_PLUS("B+"), B("B"), B_MINUS("B-"), C_PLUS("C+"), C("C"), C_MINUS("C-"),
+    D_PLUS("D+"), D("D"), D_MINUS("D-"), E("E"), F("F");
+
+    private static final Grade[] VALUES = values();
+    final String letter;
+
+    Grade(String letter) {
+        this.letter = letter;
+    }
+
+    public static Grade of(String letter) {
+        for (Grade grade : VALUES) if (grade.letter.equals(letter)) return grade;
+        return null;
+    }
+
+    public static Grade ofOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
+}
+
+enum Classification {
+    EXCELLENT("Excellent"), GOOD("Good"), AVERAGE("Average"), PROBATION("Probation"), FAIL("Fail");
+
+    private static final Classification[] VALUES = values();
+    final String label;
+
+    Classification(String label) {
+        this.label = label;
+    }
+
+    public static Classification of(String label) {
+        for (Classification classification : VALUES) if (classification.label.equals(label)) return classification;
+        return null;
+    }
+
+    public static Classification ofOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
+}
+
+class GradingPolicy {
+    final String name;
+    private final double[] pointsByMark = new double[101];
+    private final Grade[] gradeByMark = new Grade[101];
+    private final double[] classThresholds;
+    private final boolean[] strictThresholds;
+    private final Classification[] classNames;
+
+    private GradingPolicy(String name, double[] classThresholds, boolean[] strictThresholds, Classification[] classNames) {
+        this.name = name;
+        this.classThresholds = classThresholds;
+        this.strictThresholds = strictThresholds;
+        this.classNames = classNames;
+    }
+
+    public double points(int mark) {
+        return pointsByMark[Math.max(0, Math.min(100, mark))];
+    }
+
+    public Grade grade(int mark) {
+        return gradeByMark[Math.max(0, Math.min(100, mark))];
+    }
+
+    public String letterGrade(int mark) {
+        return grade(mark).letter;
+    }
+
+    public Classification classification(double gpa) {
+        for (int i = 0; i < classNames.length; i++) {
+            if (strictThresholds[i] ? gpa > classThresholds[i] : gpa >= classThresholds[i]) return classNames[i];
+        }
+        return classNames[classNames.length - 1];
+    }
+
+    public String classify(double gpa) {
+        return classification(gpa).label;
+    }
+
+    // Compiles "grade <min-mark> <letter> <points>" and "class <name> [>]<min-gpa>" lines into lookup tables.
+    public static GradingPolicy compile(String name, List<String> lines) {
+        List<String[]> grades = new ArrayList<>();
+        List<String[]> classes = new ArrayList<>();
+        for (String line : lines) {
+            String[] parts = line.trim().split("\\s+");
+            if (parts[0].equals("grade") && parts.length == 4) grades.add(parts);
+            else if (parts[0].equals("class") && parts.length == 3) classes.add(parts);
+            else throw new IllegalArgumentException("Bad line in policy " + name + ": " + line.trim());
+        }
+        if (grades.isEmpty() || classes.isEmpty()) {
+            throw new IllegalArgumentException("Policy " + name + " needs grade and class lines");
+        }
+
+        grades.sort((a, b) -> Integer.parseInt(b[1]) - Integer.parseInt(a[1]));
+        // highest bound first; at equal bounds the strict one must be tried before the one that also matches the bound
+        classes.sort((a, b) -> {
+            int byValue = Double.compare(Double.parseDouble(b[2].replace(">", "")), Double.parseDouble(a[2].replace(">", "")));
+            return byValue != 0 ? byValue : Boolean.compare(b[2].startsWith(">"), a[2].startsWith(">"));
+        });
+
+        double[] thresholds = new double[classes.size()];
+        boolean[] strict = new boolean[classes.size()];
+        Classification[] names = new Classification[classes.size()];
+        for (int i = 0; i < classes.size(); i++) {
+            String[] parts = classes.get(i);
+            names[i] = Classification.of(parts[1]);
+            if (names[i] == null) {
+                throw new IllegalArgumentException("Unknown classification in policy " + name + ": " + parts[1]);
+            }
+            strict[i] = parts[2].startsWith(">");
+            thresholds[i] = Double.parseDouble(parts[2].replace(">", ""));
+        }
+        GradingPolicy policy = new GradingPolicy(name, thresholds, strict, names);
+
+        int band = 0;
+        for (int mark = 100; mark >= 0; mark--) {
+            while (band < grades.size() && Integer.parseInt(grades.get(band)[1]) > mark) band++;
+            if (band == grades.size()) {
+                throw new IllegalArgumentException("Policy " + name + " does not cover mark " + mark);
+            }
+            policy.gradeByMark[mark] = Grade.of(grades.get(band)[2]);
+            if (policy.gradeByMark[mark] == null) {
+                throw new IllegalArgumentException("Unknown letter grade in policy " + name + ": " + grades.get(band)[2]);
+            }
+            policy.pointsByMark[mark] = Double.parseDouble(grades.get(band)[3]);
+        }
+        return policy;
+    }
+}
+
+class GradingPolicies {
+    static final String BUILT_IN = "COMSATS";
+    private static final String policyFile = "grading.txt";
+    private static final String DEFAULT_CONFIG =
+            "# Grading policies: one [NAME] section per scale.\n" +
+            "#   grade <min-mark> <A+|A|A-|B+|B|B-|C+|C|C-|D+|D|D-|E|F> <points>\n" +
+            "#   class <Excellent|Good|Average|Probation|Fail> <min-gpa>   (prefix with > for a strict bound)\n" +
+            "# Top-level lines: \"default <NAME>\" and \"semester <semester> <NAME>\".\n" +
+            "default COMSATS\n" +
+            "[COMSATS]\n" +
+            "grade 85 A 4.00\n" +
+            "grade 80 A- 3.66\n" +
+            "grade 75 B+ 3.33\n" +
+            "grade 71 B 3.00\n" +
+            "grade 68 B- 2.66\n" +
+            "grade 63 C+ 2.33\n" +
+            "grade 60 C 2.00\n" +
+            "grade 57 C- 1.66\n" +
+            "grade 54 D+ 1.33\n" +
+            "grade 50 D 1.00\n" +
+            "grade 0 F 0.00\n" +
+            "class Excellent 3.66\n" +
+            "class Good 3.00\n" +
+            "class Average 2.00\n" +
+            "class Probation >0\n" +
+            "class Fail 0\n";
+
+    private static Map<String, GradingPolicy> policies;
+    private static Map<String, String> semesterPolicies;
+    private static String defaultName;
+
+    private static synchronized void ensureLoaded() {
+        if (policies != null) return;
+        policies = new LinkedHashMap<>();
+        semesterPolicies = new HashMap<>();
+        defaultName = BUILT_IN;
+        parse(new Scanner(DEFAULT_CONFIG));
+
+        File file = new File(policyFile);
+        if (!file.exists()) {
+            try (FileWriter fw = new FileWriter(file)) {
+                fw.write(DEFAULT_CONFIG);
+            } catch (IOException e) {
+                System.out.println("Failed to create default grading policies.");
+            }
+            return;
+        }
+        try (Scanner sc = new Scanner(file)) {
+            parse(sc);
+        } catch (IOException e) {
+            System.out.println("Failed to read grading policies.");
+        }
+        if (!policies.containsKey(defaultName)) defaultName = BUILT_IN;
+    }
+
+    private static void parse(Scanner sc) {
+        String section = null;
+        List<String> lines = new ArrayList<>();
+        while (sc.hasNextLine()) {
+            String line = sc.nextLine().trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            if (line.startsWith("[") && line.endsWith("]")) {
+                addPolicy(section, lines);
+                section = line.substring(1, line.length() - 1).trim();
+                lines = new ArrayList<>();
+            } else if (section != null) {
+                lines.add(line);
+            } else {
+                String[] parts = line.split("\\s+");
+                if (parts[0].equals("default") && parts.length == 2) {
+                    defaultName = parts[1];
+                } else if (parts[0].equals("semester") && parts.length >= 3) {
+                    // semesters are free text, so everything between the keyword and the policy name is the semester
+                    String semester = String.join(" ", Arrays.copyOfRange(parts, 1, parts.length - 1));
+                    semesterPolicies.put(semester, parts[parts.length - 1]);
+                } else {
+                    System.out.println("Ignoring grading policy line: " + line);
+                }
+            }
+        }
+        addPolicy(section, lines);
+    }
+
+    private static void addPolicy(String name, List<String> lines) {
+        if (name == null) return;
+        try {
+            policies.put(name, GradingPolicy.compile(name, lines));
+        } catch (RuntimeException e) {
+            System.out.println("Skipping grading policy " + name + ": " + e.getMessage());
+        }
+    }
+
+    public static synchronized GradingPolicy getDefault() {
+        ensureLoaded();
+        return policies.get(defaultName);
+    }
+
+    // Unknown names fall back to the built-in scale, which is what records written before policies existed used.
+    public static synchronized GradingPolicy get(String name) {
+        ensureLoaded();
+        GradingPolicy policy = name == null ? null : policies.get(name);
+        return policy != null ? policy : policies.get(BUILT_IN);
+    }
+
+    public static synchronized GradingPolicy forSemester(String semester) {
+        ensureLoaded();
+        String mapped = semesterPolicies.get(semester.trim().replaceAll("\\s+", " "));
+        return mapped != null && policies.containsKey(mapped) ? policies.get(mapped) : getDefault();
+    }
+
+    public static synchronized List<String> names() {
+        ensureLoaded();
+        return new ArrayList<>(policies.keySet());
+    }
+}
+
 class Subject {
     String name;
     int marks;
@@ -150,109 +443,1965 @@ class Subject {
     double points;
     String letterGrade;
 
-    public Subject(String name, int marks, int credits) {
-        this.name = name.trim();
-        this.marks = marks;
-        this.credits = credits;
-        this.points = getPoints(marks);
-        this.letterGrade = getLetterGrade(marks);
-    }
-
-    private double getPoints(int mark) {
-        if (mark >= 85) return 4.00;
-        else if (mark >= 80) return 3.66;
-        else if (mark >= 75) return 3.33;
-        else if (mark >= 71) return 3.00;
-        else if (mark >= 68) return 2.66;
-        else if (mark >= 63) return 2.33;
-        else if (mark >= 60) return 2.00;
-        else if (mark >= 57) return 1.66;
-        else if (mark >= 54) return 1.33;
-        else if (mark >= 50) return 1.00;
-        else return 0.00;
-    }
-
-    private String getLetterGrade(int mark) {
-        if (mark >= 85) return "A";
-        else if (mark >= 80) return "A-";
-        else if (mark >= 75) return "B+";
-        else if (mark >= 71) return "B";
-        else if (mark >= 68) return "B-";
-        else if (mark >= 63) return "C+";
-        else if (mark >= 60) return "C";
-        else if (mark >= 57) return "C-";
-        else if (mark >= 54) return "D+";
-        else if (mark >= 50) return "D";
-        else return "F";
+    public Subject(String name, int marks, int credits, GradingPolicy policy) {
+        this.name = name.trim();
+        this.marks = marks;
+        this.credits = credits;
+        this.points = policy.points(marks);
+        this.letterGrade = policy.letterGrade(marks);
+    }
+}
+
+class SemesterRecord {
+    String studentName;
+    String semester;
+    double gpa;
+    String classification;
+    String policy;
+    List<Subject> subjects = new ArrayList<>();
+
+    public SemesterRecord(String studentName, String semester, double gpa, String classification,
+                          List<Subject> subjects, String policy) {
+        this.studentName = studentName;
+        this.semester = semester;
+        this.gpa = gpa;
+        this.classification = classification;
+        this.policy = policy;
+        this.subjects.addAll(subjects);
+    }
+
+    // Recomputes grades, GPA and classification from the stored marks under another policy.
+    public SemesterRecord regrade(GradingPolicy newPolicy) {
+        List<Subject> regraded = new ArrayList<>();
+        double totalPoints = 0;
+        int totalCredits = 0;
+        for (Subject sub : subjects) {
+            Subject subject = new Subject(sub.name, sub.marks, sub.credits, newPolicy);
+            regraded.add(subject);
+            totalPoints += subject.points * subject.credits;
+            totalCredits += subject.credits;
+        }
+        double newGpa = totalCredits > 0 ? totalPoints / totalCredits : 0.0;
+        return new SemesterRecord(studentName, semester, newGpa, newPolicy.classify(newGpa), regraded, newPolicy.name);
+    }
+
+    public String toFileString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Name: ").append(studentName).append("\n");
+        sb.append("Semester: ").append(semester).append("\n");
+        sb.append("GPA: ").append(String.format("%.2f", gpa)).append("\n");
+        sb.append("Classification: ").append(classification).append("\n");
+        sb.append("Policy: ").append(policy).append("\n");
+        sb.append("Subjects:\n");
+        for (Subject sub : subjects) {
+            sb.append("  ").append(sub.name)
+              .append(" | Marks: ").append(sub.marks)
+              .append(" | Credits: ").append(sub.credits)
+              .append(" | Grade: ").append(sub.letterGrade).append("\n");
+        }
+        sb.append("------------------------\n");
+        return sb.toString();
+    }
+}
+
+// Interns repeated strings (subject names, semesters, ...) so each distinct value is held once and referenced by id.
+// Ids are reference-counted: once every holder has released one, the string is dropped and the id reused.
+class StringDictionary {
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+    private final List<Integer> refCounts = new ArrayList<>();
+    private final Deque<Integer> freeIds = new ArrayDeque<>();
+
+    public synchronized int intern(String value) {
+        Integer id = ids.get(value);
+        if (id == null) {
+            String copy = new String(value.toCharArray()); // don't pin the caller's string (or what it was cut from)
+            if (freeIds.isEmpty()) {
+                id = values.size();
+                values.add(copy);
+                refCounts.add(0);
+            } else {
+                id = freeIds.pop();
+                values.set(id, copy);
+            }
+            ids.put(copy, id);
+        }
+        refCounts.set(id, refCounts.get(id) + 1);
+        return id;
+    }
+
+    public synchronized void release(int id) {
+        int count = refCounts.get(id) - 1;
+        refCounts.set(id, count);
+        if (count == 0) {
+            ids.remove(values.get(id));
+            values.set(id, null);
+            freeIds.push(id);
+        }
+    }
+
+    public synchronized String get(int id) {
+        return values.get(id);
+    }
+
+    public synchronized int size() {
+        return ids.size();
+    }
+}
+
+// A SemesterRecord packed into dictionary ids, per-subject parallel primitive arrays and enum ordinals.
+class CompactRecord {
+    final int studentId;
+    final int semesterId;
+    final int policyId;
+    final double gpa;
+    final byte classification;
+    final int[] subjectIds;
+    final byte[] marks;
+    final byte[] credits;
+    final byte[] grades;
+
+    CompactRecord(int studentId, int semesterId, int policyId, double gpa, byte classification,
+                  int[] subjectIds, byte[] marks, byte[] credits, byte[] grades) {
+        this.studentId = studentId;
+        this.semesterId = semesterId;
+        this.policyId = policyId;
+        this.gpa = gpa;
+        this.classification = classification;
+        this.subjectIds = subjectIds;
+        this.marks = marks;
+        this.credits = credits;
+        this.grades = grades;
+    }
+
+    public int subjectCount() {
+        return subjectIds.length;
+    }
+}
+
+class CompactRecordStore {
+    private final StringDictionary students = new StringDictionary();
+    private final StringDictionary semesters = new StringDictionary();
+    private final StringDictionary subjects = new StringDictionary();
+    private final StringDictionary policies = new StringDictionary();
+
+    // Throws IllegalArgumentException, before interning anything, for values the compact form cannot hold.
+    public CompactRecord compact(SemesterRecord record) {
+        Classification classification = Classification.of(record.classification);
+        if (classification == null) throw new IllegalArgumentException("Unknown classification " + record.classification);
+        int count = record.subjects.size();
+        byte[] marks = new byte[count];
+        byte[] credits = new byte[count];
+        byte[] grades = new byte[count];
+        for (int i = 0; i < count; i++) {
+            Subject sub = record.subjects.get(i);
+            Grade grade = Grade.of(sub.letterGrade);
+            if (grade == null) throw new IllegalArgumentException("Unknown letter grade " + sub.letterGrade);
+            marks[i] = toByte(sub.marks, "marks");
+            credits[i] = toByte(sub.credits, "credits");
+            grades[i] = (byte) grade.ordinal();
+        }
+        int[] subjectIds = new int[count];
+        for (int i = 0; i < count; i++) subjectIds[i] = subjects.intern(record.subjects.get(i).name);
+        return new CompactRecord(students.intern(record.studentName), semesters.intern(record.semester),
+                policies.intern(record.policy), record.gpa, (byte) classification.ordinal(), subjectIds, marks, credits, grades);
+    }
+
+    private static byte toByte(int value, String field) {
+        if (value < 0 || value > Byte.MAX_VALUE) throw new IllegalArgumentException("Subject " + field + " out of range: " + value);
+        return (byte) value;
+    }
+
+    // Gives back the dictionary references taken by compact(); the record must not be expanded afterwards.
+    public void release(CompactRecord rec) {
+        students.release(rec.studentId);
+        semesters.release(rec.semesterId);
+        policies.release(rec.policyId);
+        for (int id : rec.subjectIds) subjects.release(id);
+    }
+
+    public int internedStrings() {
+        return students.size() + semesters.size() + subjects.size() + policies.size();
+    }
+
+    public SemesterRecord expand(CompactRecord rec) {
+        String policyName = policies.get(rec.policyId);
+        GradingPolicy policy = GradingPolicies.get(policyName);
+        List<Subject> list = new ArrayList<>(rec.subjectCount());
+        for (int i = 0; i < rec.subjectCount(); i++) {
+            Subject sub = new Subject(subjects.get(rec.subjectIds[i]), rec.marks[i], rec.credits[i], policy);
+            sub.letterGrade = Grade.ofOrdinal(rec.grades[i]).letter;
+            list.add(sub);
+        }
+        return new SemesterRecord(students.get(rec.studentId), semesters.get(rec.semesterId), rec.gpa,
+                Classification.ofOrdinal(rec.classification).label, list, policyName);
+    }
+
+    // Builds the same synthetic records in both representations and prints the retained heap per record.
+    public static void measureHeap(int count) {
+        String[] names = {"Programming Fundamentals", "Calculus and Analytic Geometry", "Discrete Structures",
+                "Data Structures", "Database Systems", "Operating Systems", "Software Engineering", "Computer Networks"};
+        GradingPolicy policy = GradingPolicies.getDefault();
+        Random random = new Random(42);
+
+        long before = usedHeap();
+        List<SemesterRecord> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            List<Subject> subs = new ArrayList<>();
+            for (int j = 0; j < 5; j++) {
+                // fresh copies, as the file parser produces a new String for every line it reads
+                subs.add(new Subject(new String(names[random.nextInt(names.length)].toCharArray()),
+                        40 + random.nextInt(61), 1 + random.nextInt(4), policy));
+            }
+            double points = 0;
+            int totalCredits = 0;
+            for (Subject sub : subs) {
+                points += sub.points * sub.credits;
+                totalCredits += sub.credits;
+            }
+            double gpa = points / totalCredits;
+            records.add(new SemesterRecord(new String(("Student " + i / 8).toCharArray()),
+                    new String(("Semester " + (i % 8 + 1)).toCharArray()), gpa, policy.classify(gpa), subs, policy.name));
+        }
+        long plain = usedHeap() - before;
+
+        before = usedHeap();
+        CompactRecordStore store = new CompactRecordStore();
+        List<CompactRecord> compact = new ArrayList<>(count);
+        for (SemesterRecord record : records) compact.add(store.compact(record));
+        long packed = usedHeap() - before; // includes the dictionaries, which keep their own copies of the strings
+
+        System.out.printf("Records: %d (5 subjects each)%n", count);
+        System.out.printf("SemesterRecord/Subject: %d bytes per record%n", plain / count);
+        System.out.printf("CompactRecord:          %d bytes per record (%.0f%% of current)%n",
+                packed / count, packed * 100.0 / plain);
+        Reference.reachabilityFence(records);
+        Reference.reachabilityFence(compact);
+        Reference.reachabilityFence(store);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
+
+class JournalEntry {
+    final long id;
+    final int index;
+    final String block;
+
+    public JournalEntry(long id, int index, String block) {
+        this.id = id;
+        this.index = index;
+        this.block = block;
+    }
+}
+
+// One change to the record store: removed entries carry their index before the change, added ones their index after it.
+class JournalDiff {
+    final long seq;
+    final long time;
+    final String label;
+    final List<JournalEntry> removed = new ArrayList<>();
+    final List<JournalEntry> added = new ArrayList<>();
+
+    public JournalDiff(long seq, long time, String label) {
+        this.seq = seq;
+        this.time = time;
+        this.label = label.replace('\n', ' ');
+    }
+
+    public boolean isEmpty() {
+        return removed.isEmpty() && added.isEmpty();
+    }
+
+    public JournalDiff inverse(JournalDiff target) {
+        target.removed.addAll(added);
+        target.added.addAll(removed);
+        return target;
+    }
+
+    public JournalDiff copyInto(JournalDiff target) {
+        target.removed.addAll(removed);
+        target.added.addAll(added);
+        return target;
+    }
+
+    public void applyTo(List<Long> ids, List<String> blocks) {
+        if (!removed.isEmpty()) {
+            Set<Long> gone = new HashSet<>();
+            for (JournalEntry entry : removed) gone.add(entry.id);
+            List<Long> keptIds = new ArrayList<>();
+            List<String> keptBlocks = new ArrayList<>();
+            for (int i = 0; i < ids.size(); i++) {
+                if (!gone.contains(ids.get(i))) {
+                    keptIds.add(ids.get(i));
+                    keptBlocks.add(blocks.get(i));
+                }
+            }
+            ids.clear();
+            ids.addAll(keptIds);
+            blocks.clear();
+            blocks.addAll(keptBlocks);
+        }
+        List<JournalEntry> inserts = new ArrayList<>(added);
+        inserts.sort((a, b) -> Integer.compare(a.index, b.index));
+        for (JournalEntry entry : inserts) {
+            ids.add(entry.index, entry.id);
+            blocks.add(entry.index, entry.block);
+        }
+    }
+
+    // Fills target with the changes that turn the "before" state into the "after" state.
+    public static JournalDiff between(List<Long> beforeIds, List<String> beforeBlocks,
+                                      List<Long> afterIds, List<String> afterBlocks, JournalDiff target) {
+        Set<Long> beforeSet = new HashSet<>(beforeIds);
+        Set<Long> afterSet = new HashSet<>(afterIds);
+        List<Long> commonBefore = new ArrayList<>();
+        List<Long> commonAfter = new ArrayList<>();
+        for (Long id : beforeIds) if (afterSet.contains(id)) commonBefore.add(id);
+        for (Long id : afterIds) if (beforeSet.contains(id)) commonAfter.add(id);
+        boolean reordered = !commonBefore.equals(commonAfter);
+
+        for (int i = 0; i < beforeIds.size(); i++) {
+            if (reordered || !afterSet.contains(beforeIds.get(i))) {
+                target.removed.add(new JournalEntry(beforeIds.get(i), i, beforeBlocks.get(i)));
+            }
+        }
+        for (int i = 0; i < afterIds.size(); i++) {
+            if (reordered || !beforeSet.contains(afterIds.get(i))) {
+                target.added.add(new JournalEntry(afterIds.get(i), i, afterBlocks.get(i)));
+            }
+        }
+        return target;
+    }
+
+    public String toText(String tag) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(tag).append(' ').append(seq).append(' ').append(time).append(' ')
+          .append(removed.size()).append(' ').append(added.size()).append(' ').append(label).append('\n');
+        appendEntries(sb, '-', removed, false); // replay only needs the ids of removed blocks
+        appendEntries(sb, '+', added, true);
+        return sb.toString();
+    }
+
+    private static void appendEntries(StringBuilder sb, char sign, List<JournalEntry> entries, boolean withText) {
+        for (JournalEntry entry : entries) {
+            int lines = 0;
+            if (withText) {
+                for (int i = 0; i < entry.block.length(); i++) if (entry.block.charAt(i) == '\n') lines++;
+            }
+            sb.append(sign).append(' ').append(entry.id).append(' ').append(entry.index).append(' ').append(lines).append('\n');
+            if (withText) sb.append(entry.block);
+        }
+    }
+
+    // Reads every intact diff in the file. Entries are framed like students.txt records (see RecordFrames), so a
+    // damaged entry is skipped and reported. With repair set, a torn entry at the end (e.g. after a crash) is cut off
+    // so later appends start on a clean frame, and a file from before framing is rewritten framed.
+    public static List<JournalDiff> readAll(File file, String tag, boolean repair) throws IOException {
+        List<JournalDiff> diffs = new ArrayList<>();
+        if (!file.exists()) return diffs;
+        byte[] data = Files.readAllBytes(file.toPath());
+        if (data.length > 0 && !new String(data, StandardCharsets.US_ASCII).startsWith(RecordFrames.HEADER)) {
+            readUnframed(new String(data, Charset.defaultCharset()), tag, diffs);
+            if (repair) rewriteFramed(file, diffs, tag);
+            return diffs;
+        }
+
+        RecordFrames.Scan scan = RecordFrames.scan(data);
+        for (int[] region : scan.corrupt) {
+            System.out.println("Skipping damaged entry in " + file.getName() + " at offset " + region[0]);
+        }
+        for (String text : scan.blocks) {
+            JournalDiff diff = read(new BufferedReader(new StringReader(text)), tag);
+            if (diff != null) diffs.add(diff);
+            else System.out.println("Skipping unreadable entry in " + file.getName());
+        }
+        if (repair && scan.tornTail) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(scan.end);
+                channel.force(true);
+            }
+            System.out.println("Removed an incomplete entry at the end of " + file.getName());
+        }
+        return diffs;
+    }
+
+    public static void append(File file, JournalDiff diff, String tag) throws IOException {
+        RecordFrames.append(file.toPath(), diff.toText(tag));
+    }
+
+    // Journals written before entries were framed: read up to the first entry that is cut short.
+    private static void readUnframed(String text, String tag, List<JournalDiff> diffs) throws IOException {
+        try (BufferedReader br = new BufferedReader(new StringReader(text))) {
+            JournalDiff diff;
+            while ((diff = read(br, tag)) != null) diffs.add(diff);
+        }
+    }
+
+    private static void rewriteFramed(File file, List<JournalDiff> diffs, String tag) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            for (JournalDiff diff : diffs) out.write(RecordFrames.frame(diff.toText(tag)));
+            out.getFD().sync();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // Returns null at the end of the input or when the entry there is incomplete or not a tag entry.
+    private static JournalDiff read(BufferedReader br, String tag) throws IOException {
+        String header = br.readLine();
+        if (header == null) return null;
+        try {
+            String[] parts = header.split(" ", 6);
+            if (parts.length < 6 || !parts[0].equals(tag)) return null;
+            JournalDiff diff = new JournalDiff(Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[5]);
+            if (!readEntries(br, Integer.parseInt(parts[3]), diff.removed) ||
+                    !readEntries(br, Integer.parseInt(parts[4]), diff.added)) return null;
+            return diff;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static boolean readEntries(BufferedReader br, int count, List<JournalEntry> entries) throws IOException {
+        for (int n = 0; n < count; n++) {
+            String line = br.readLine();
+            if (line == null) return false;
+            String[] parts = line.split(" ");
+            if (parts.length != 4) return false;
+            StringBuilder block = new StringBuilder();
+            int lines = Integer.parseInt(parts[3]);
+            for (int i = 0; i < lines; i++) {
+                String blockLine = br.readLine();
+                if (blockLine == null) return false;
+                block.append(blockLine).append('\n');
+            }
+            entries.add(new JournalEntry(Long.parseLong(parts[1]), Integer.parseInt(parts[2]), block.toString()));
+        }
+        return true;
+    }
+}
+
+// The journal is split into segments: students.txt.journal holds the ops after the latest snapshot, and when a new
+// snapshot is written it is renamed to students.txt.journal.<seq of the snapshot it follows>.
+class RecordJournal {
+    private static final int SNAPSHOT_EVERY = 50;
+
+    private final File journalFile;
+    private final File snapshotFile;
+    private List<Long> snapshotIds = new ArrayList<>();
+    private List<String> snapshotBlocks = new ArrayList<>();
+    private long snapshotSeq;
+    private int opsSinceSnapshot;
+    private long seq;
+    private long nextId;
+
+    public RecordJournal(String storeName) {
+        journalFile = new File(storeName + ".journal");
+        snapshotFile = new File(storeName + ".snapshots");
+    }
+
+    // Rebuilds the last known store state from the snapshot chain plus the journal tail after it.
+    public void open(List<Long> ids, List<String> blocks) {
+        ids.clear();
+        blocks.clear();
+        try {
+            List<JournalDiff> snapshots = JournalDiff.readAll(snapshotFile, "#SNAP", true);
+            if (!snapshots.isEmpty()) {
+                for (JournalDiff snapshot : snapshots) {
+                    snapshot.applyTo(ids, blocks);
+                    track(snapshot);
+                }
+                snapshotIds = new ArrayList<>(ids);
+                snapshotBlocks = new ArrayList<>(blocks);
+                snapshotSeq = snapshots.get(snapshots.size() - 1).seq;
+                for (JournalDiff op : JournalDiff.readAll(journalFile, "#OP", true)) {
+                    if (op.seq <= snapshotSeq) continue;
+                    op.applyTo(ids, blocks);
+                    track(op);
+                    opsSinceSnapshot++;
+                }
+                return;
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Record journal unreadable (" + e + "), starting a new one.");
+        }
+        ids.clear();
+        blocks.clear();
+        seq = 0;
+        nextId = 0;
+        snapshotSeq = 0;
+        opsSinceSnapshot = 0;
+        snapshotIds = new ArrayList<>();
+        snapshotBlocks = new ArrayList<>();
+        if (!moveHistoryAside()) {
+            System.out.println("Could not move the old record journal aside; history will not be recorded.");
+            return;
+        }
+        try {
+            JournalDiff.append(snapshotFile, new JournalDiff(0, System.currentTimeMillis(), "base"), "#SNAP");
+        } catch (IOException e) {
+            System.out.println("Failed to create record journal.");
+        }
+    }
+
+    // Keeps any earlier journal files under an "unreadable-<time>" suffix instead of deleting their history.
+    private boolean moveHistoryAside() {
+        File[] files = journalFile.getAbsoluteFile().getParentFile().listFiles((dir, name) ->
+                (name.equals(snapshotFile.getName()) || name.startsWith(journalFile.getName())) && !name.contains(".unreadable-"));
+        if (files == null || files.length == 0) return true;
+        String suffix = ".unreadable-" + System.currentTimeMillis();
+        boolean moved = true;
+        for (File file : files) {
+            try {
+                Files.move(file.toPath(), new File(file.getPath() + suffix).toPath());
+                System.out.println("Kept old record history as " + file.getName() + suffix);
+            } catch (IOException e) {
+                moved = false;
+            }
+        }
+        return moved;
+    }
+
+    private void track(JournalDiff diff) {
+        seq = Math.max(seq, diff.seq);
+        for (JournalEntry entry : diff.added) nextId = Math.max(nextId, entry.id + 1);
+    }
+
+    public JournalDiff newDiff(String label) {
+        return new JournalDiff(++seq, System.currentTimeMillis(), label);
+    }
+
+    public long newId() {
+        return nextId++;
+    }
+
+    // Appends an applied diff; every SNAPSHOT_EVERY ops the change since the previous snapshot is written as one diff
+    // and a new journal segment is started.
+    public void append(JournalDiff diff, List<Long> ids, List<String> blocks) {
+        try {
+            JournalDiff.append(journalFile, diff, "#OP");
+        } catch (IOException e) {
+            System.out.println("Failed to write record journal.");
+            return;
+        }
+        if (++opsSinceSnapshot < SNAPSHOT_EVERY) return;
+
+        JournalDiff snapshot = JournalDiff.between(snapshotIds, snapshotBlocks, ids, blocks,
+                new JournalDiff(diff.seq, System.currentTimeMillis(), "snapshot"));
+        try {
+            JournalDiff.append(snapshotFile, snapshot, "#SNAP");
+        } catch (IOException e) {
+            System.out.println("Failed to write record snapshot.");
+            return;
+        }
+        try {
+            Files.move(journalFile.toPath(), segmentAfter(snapshotSeq).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.out.println("Failed to start a new record journal segment.");
+        }
+        snapshotIds = new ArrayList<>(ids);
+        snapshotBlocks = new ArrayList<>(blocks);
+        snapshotSeq = snapshot.seq;
+        opsSinceSnapshot = 0;
+    }
+
+    private File segmentAfter(long snapshotSeq) {
+        return new File(journalFile.getPath() + "." + snapshotSeq);
+    }
+
+    // Replays snapshots up to the given time and then only the journal segment after the last one used.
+    public boolean stateAt(long time, List<Long> ids, List<String> blocks) {
+        try {
+            List<JournalDiff> snapshots = JournalDiff.readAll(snapshotFile, "#SNAP", false);
+            if (snapshots.isEmpty()) return false;
+            long usedSeq = 0;
+            for (int i = 0; i < snapshots.size(); i++) {
+                JournalDiff snapshot = snapshots.get(i);
+                if (i > 0 && snapshot.time > time) break;
+                snapshot.applyTo(ids, blocks);
+                usedSeq = snapshot.seq;
+            }
+            File segment = usedSeq == snapshotSeq ? journalFile : segmentAfter(usedSeq);
+            if (usedSeq != snapshotSeq && !segment.exists()) return false;
+            for (JournalDiff op : JournalDiff.readAll(segment, "#OP", false)) {
+                if (op.seq <= usedSeq) continue;
+                if (op.time > time) break;
+                op.applyTo(ids, blocks);
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+}
+
+interface RecordStoreListener {
+    void recordSaved(SemesterRecord record);
+    void recordsDeleted(String studentName, List<SemesterRecord> removed);
+    // Bulk changes (re-grade, undo/redo, restore, outside edits) send the full resulting record list.
+    void storeReplaced(List<SemesterRecord> records);
+}
+
+interface RecordStore {
+    boolean save(SemesterRecord record);
+    boolean delete(String studentName);
+    int regradeAll(String policyName); // number of records re-graded, or -1 if the store could not be rewritten
+    List<SemesterRecord> load(String studentName) throws IOException;
+    String undo();
+    String redo();
+    String peekUndo();
+    String peekRedo();
+    boolean restoreTo(long time);
+    void addListener(RecordStoreListener listener);
+}
+
+// On-disk framing for students.txt. Every record block is preceded by a "#FRAME <length> <crc32c>" line covering the
+// block's bytes, so a torn append or a damaged record can be told apart from good data. Unframed blocks, from older
+// files or other programs, are still read up to their separator line.
+class RecordFrames {
+    static final String HEADER = "#FRAME ";
+    private static final String SEPARATOR = "------------------------";
+    private static final byte[] HEADER_BYTES = HEADER.getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NAME_BYTES = "Name: ".getBytes(StandardCharsets.US_ASCII);
+
+    static class Scan {
+        final List<String> blocks = new ArrayList<>();
+        final List<int[]> corrupt = new ArrayList<>(); // {offset, length} of regions that were skipped
+        int end; // offset just past the last complete block or skipped region
+        boolean tornTail; // bytes after end that do not yet form a complete block
+    }
+
+    static byte[] frame(String block) {
+        byte[] body = block.getBytes(Charset.defaultCharset());
+        CRC32C crc = new CRC32C();
+        crc.update(body, 0, body.length);
+        byte[] header = String.format("%s%d %08x\n", HEADER, body.length, crc.getValue()).getBytes(StandardCharsets.US_ASCII);
+        byte[] framed = Arrays.copyOf(header, header.length + body.length);
+        System.arraycopy(body, 0, framed, header.length, body.length);
+        return framed;
+    }
+
+    // Writes the frame with one append and syncs it; a failed write is cut back off so no torn frame is left behind.
+    static void append(Path file, String block) throws IOException {
+        ByteBuffer frame = ByteBuffer.wrap(frame(block));
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            long start = channel.size();
+            try {
+                while (frame.hasRemaining()) channel.write(frame);
+                channel.force(false);
+            } catch (IOException e) {
+                channel.truncate(start);
+                throw e;
+            }
+        }
+    }
+
+    static Scan scan(byte[] data) {
+        Scan scan = new Scan();
+        int pos = 0;
+        while (pos < data.length) {
+            int next = startsWithHeader(data, pos) ? readFrame(data, pos, scan) : readUnframed(data, pos, scan);
+            if (next < 0) break;
+            pos = next;
+            scan.end = pos;
+        }
+        for (int i = scan.end; i < data.length && !scan.tornTail; i++) {
+            if (!Character.isWhitespace(data[i])) scan.tornTail = true;
+        }
+        return scan;
+    }
+
+    // Returns the offset after the frame, or -1 when the frame runs past the end of the data.
+    private static int readFrame(byte[] data, int pos, Scan scan) {
+        int newline = indexOf(data, (byte) '\n', pos);
+        if (newline < 0) return -1;
+        int length;
+        long checksum;
+        try {
+            String[] parts = new String(data, pos, newline - pos, StandardCharsets.US_ASCII).trim().split(" ");
+            length = Integer.parseInt(parts[1]);
+            checksum = Long.parseLong(parts[2], 16);
+        } catch (RuntimeException e) {
+            return skipTo(data, nextHeader(data, newline), pos, scan);
+        }
+        int bodyStart = newline + 1;
+        if (length < 0 || length > data.length - bodyStart) {
+            // a later header means the length field is damaged; otherwise the append was cut short
+            int later = nextHeader(data, bodyStart);
+            return later < 0 ? -1 : skipTo(data, later, pos, scan);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(data, bodyStart, length);
+        if (crc.getValue() != checksum) {
+            // the length fits, so only the body is damaged; resync further on only if nothing block-like follows it
+            int after = bodyStart + length;
+            if (after < data.length && !startsWithHeader(data, after) && !startsWith(data, after, NAME_BYTES)) {
+                after = nextHeader(data, bodyStart);
+            }
+            return skipTo(data, after, pos, scan);
+        }
+        scan.blocks.add(new String(data, bodyStart, length, Charset.defaultCharset()));
+        return bodyStart + length;
+    }
+
+    // Returns the offset after the separator line, or -1 when the block has no separator yet.
+    private static int readUnframed(byte[] data, int pos, Scan scan) {
+        int start = pos;
+        while (pos < data.length) {
+            if (pos > start && startsWithHeader(data, pos)) return skipTo(data, pos, start, scan); // no separator
+            int newline = indexOf(data, (byte) '\n', pos);
+            if (newline < 0) return -1;
+            String line = new String(data, pos, newline - pos, Charset.defaultCharset());
+            pos = newline + 1;
+            if (line.trim().equals(SEPARATOR)) {
+                scan.blocks.add(new String(data, start, pos - start, Charset.defaultCharset()).replace("\r\n", "\n"));
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    // Records data[pos, next) as damaged and resumes at next, or at the end of the data when there is no next.
+    private static int skipTo(byte[] data, int next, int pos, Scan scan) {
+        if (next < 0) next = data.length;
+        scan.corrupt.add(new int[]{pos, next - pos});
+        return next;
+    }
+
+    private static boolean startsWithHeader(byte[] data, int pos) {
+        return startsWith(data, pos, HEADER_BYTES);
+    }
+
+    private static boolean startsWith(byte[] data, int pos, byte[] prefix) {
+        if (data.length - pos < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[pos + i] != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    private static int nextHeader(byte[] data, int from) {
+        for (int i = from; i < data.length; i++) {
+            if (data[i] == '#' && startsWithHeader(data, i)) return i;
+        }
+        return -1;
+    }
+
+    private static int indexOf(byte[] data, byte b, int from) {
+        for (int i = from; i < data.length; i++) {
+            if (data[i] == b) return i;
+        }
+        return -1;
+    }
+}
+
+class FileHandler implements RecordStore {
+    private final String filename = "students.txt";
+    private final RecordJournal journal = new RecordJournal(filename);
+    private final List<RecordStoreListener> listeners = new CopyOnWriteArrayList<>();
+    private final List<Long> ids = new ArrayList<>();
+    private final List<String> blocks = new ArrayList<>();
+    private final Deque<JournalDiff> undoStack = new ArrayDeque<>();
+    private final Deque<JournalDiff> redoStack = new ArrayDeque<>();
+    private long knownLength = -1; // offset up to which students.txt has been read into blocks
+    private long knownModified = -1;
+    private Object knownKey;
+    private final String recoveryReport;
+
+    public FileHandler() {
+        recoveryReport = recover();
+        if (recoveryReport != null) System.out.println(recoveryReport);
+        journal.open(ids, blocks);
+        syncWithStore();
+    }
+
+    // Summary of what the startup scan had to repair, or null if the file was intact.
+    public String getRecoveryReport() {
+        return recoveryReport;
+    }
+
+    // Startup scan: cuts off a record torn mid-append and drops frames that fail their checksum, so everything left
+    // in students.txt is readable. The removed bytes are kept in students.txt.corrupt.
+    private String recover() {
+        File file = new File(filename);
+        if (!file.exists()) return null;
+        byte[] data;
+        try {
+            data = Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            return "Could not check " + filename + ": " + e.getMessage();
+        }
+        RecordFrames.Scan scan = RecordFrames.scan(data);
+        List<String> readable = new ArrayList<>();
+        List<String> unreadable = new ArrayList<>();
+        for (String block : scan.blocks) {
+            try {
+                parseRecords(new Scanner(block), null);
+                readable.add(block);
+            } catch (RuntimeException e) {
+                unreadable.add(block); // complete, but not a record the parser understands
+            }
+        }
+        if (scan.corrupt.isEmpty() && !scan.tornTail && unreadable.isEmpty()) return null;
+
+        StringBuilder report = new StringBuilder("Recovered " + filename + ":");
+        try (FileOutputStream out = new FileOutputStream(filename + ".corrupt", true)) {
+            for (String block : unreadable) {
+                out.write(block.getBytes(Charset.defaultCharset()));
+                report.append(String.format("%n  unreadable record \"%s\" removed", block.split("\n", 2)[0].trim()));
+            }
+            for (int[] region : scan.corrupt) {
+                out.write(data, region[0], region[1]);
+                report.append(String.format("%n  damaged record at offset %d (%d bytes) removed", region[0], region[1]));
+            }
+            if (scan.tornTail) {
+                out.write(data, scan.end, data.length - scan.end);
+                report.append(String.format("%n  incomplete record at offset %d (%d bytes) removed", scan.end, data.length - scan.end));
+            }
+        } catch (IOException e) {
+            return "Could not save damaged records to " + filename + ".corrupt, left the file unchanged.";
+        }
+
+        boolean repaired;
+        if (scan.corrupt.isEmpty() && unreadable.isEmpty()) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(scan.end);
+                channel.force(true);
+                repaired = true;
+            } catch (IOException e) {
+                repaired = false;
+            }
+        } else {
+            repaired = writeBlocks(readable);
+        }
+        if (!repaired) return "Could not repair " + filename + "; damaged records are skipped when reading.";
+        report.append(String.format("%n  %d records intact, removed bytes saved to %s.corrupt", readable.size(), filename));
+        return report.toString();
+    }
+
+    public synchronized boolean save(SemesterRecord record) {
+        syncWithStore();
+        String block = record.toFileString();
+        if (!appendFrame(block)) return false;
+        JournalDiff diff = journal.newDiff("save " + record.studentName);
+        diff.added.add(new JournalEntry(journal.newId(), blocks.size(), block));
+        diff.applyTo(ids, blocks);
+        journal.append(diff, ids, blocks);
+        rememberStore();
+        undoStack.push(diff);
+        redoStack.clear();
+        for (RecordStoreListener listener : listeners) listener.recordSaved(record);
+        return true;
+    }
+
+    public synchronized boolean delete(String studentName) {
+        if (studentName.trim().isEmpty()) return false; // an empty prefix would match every record
+        syncWithStore();
+        JournalDiff diff = journal.newDiff("delete " + studentName.trim());
+        for (int i = 0; i < blocks.size(); i++) {
+            if (blocks.get(i).trim().startsWith("Name: " + studentName.trim())) {
+                diff.removed.add(new JournalEntry(ids.get(i), i, blocks.get(i)));
+            }
+        }
+        if (diff.isEmpty() || !apply(diff)) return false;
+        undoStack.push(diff);
+        redoStack.clear();
+        List<String> removed = new ArrayList<>();
+        for (JournalEntry entry : diff.removed) removed.add(entry.block);
+        List<SemesterRecord> removedRecords = parseBlocks(removed, null);
+        for (RecordStoreListener listener : listeners) listener.recordsDeleted(studentName.trim(), removedRecords);
+        return true;
+    }
+
+    // Re-grades every record and rewrites the store in one step under the store lock, so nothing saved meanwhile is
+    // lost; the temp file is only swapped in once fully written.
+    public synchronized int regradeAll(String policyName) {
+        syncWithStore();
+        GradingPolicy policy = GradingPolicies.get(policyName);
+        List<SemesterRecord> records = parseBlocks(blocks, null).parallelStream()
+                .map(rec -> rec.regrade(policy))
+                .collect(Collectors.toList());
+        List<Long> newIds = new ArrayList<>();
+        List<String> newBlocks = new ArrayList<>();
+        for (SemesterRecord record : records) {
+            newIds.add(journal.newId());
+            newBlocks.add(record.toFileString());
+        }
+        JournalDiff diff = JournalDiff.between(ids, blocks, newIds, newBlocks,
+                journal.newDiff("re-grade all records under " + policy.name));
+        if (!apply(diff)) return -1;
+        undoStack.push(diff);
+        redoStack.clear();
+        fireStoreReplaced();
+        return records.size();
+    }
+
+    // Returns the label of the undone operation, or null if there was nothing to undo.
+    public synchronized String undo() {
+        syncWithStore();
+        if (undoStack.isEmpty()) return null;
+        JournalDiff done = undoStack.peek();
+        if (!apply(done.inverse(journal.newDiff("undo " + done.label)))) return null;
+        redoStack.push(undoStack.pop());
+        fireStoreReplaced();
+        return done.label;
+    }
+
+    public synchronized String redo() {
+        syncWithStore();
+        if (redoStack.isEmpty()) return null;
+        JournalDiff undone = redoStack.peek();
+        if (!apply(undone.copyInto(journal.newDiff("redo " + undone.label)))) return null;
+        undoStack.push(redoStack.pop());
+        fireStoreReplaced();
+        return undone.label;
+    }
+
+    public synchronized String peekUndo() {
+        return undoStack.isEmpty() ? null : undoStack.peek().label;
+    }
+
+    public synchronized String peekRedo() {
+        return redoStack.isEmpty() ? null : redoStack.peek().label;
+    }
+
+    // Puts the store back the way it was at the given time; the restore itself can be undone.
+    public synchronized boolean restoreTo(long time) {
+        syncWithStore();
+        List<Long> oldIds = new ArrayList<>();
+        List<String> oldBlocks = new ArrayList<>();
+        if (!journal.stateAt(time, oldIds, oldBlocks)) return false;
+        JournalDiff diff = JournalDiff.between(ids, blocks, oldIds, oldBlocks,
+                journal.newDiff("restore to " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(time))));
+        if (diff.isEmpty()) return true; // already in that state; nothing to apply or undo
+        if (!apply(diff)) return false;
+        undoStack.push(diff);
+        redoStack.clear();
+        fireStoreReplaced();
+        return true;
+    }
+
+    public void addListener(RecordStoreListener listener) {
+        listeners.add(listener);
+    }
+
+    private void fireStoreReplaced() {
+        if (listeners.isEmpty()) return;
+        List<SemesterRecord> records = parseBlocks(blocks, null);
+        for (RecordStoreListener listener : listeners) listener.storeReplaced(records);
+    }
+
+    private boolean apply(JournalDiff diff) {
+        List<Long> newIds = new ArrayList<>(ids);
+        List<String> newBlocks = new ArrayList<>(blocks);
+        diff.applyTo(newIds, newBlocks);
+        if (!writeBlocks(newBlocks)) return false;
+        ids.clear();
+        ids.addAll(newIds);
+        blocks.clear();
+        blocks.addAll(newBlocks);
+        journal.append(diff, ids, blocks);
+        rememberStore();
+        return true;
+    }
+
+    private boolean appendFrame(String block) {
+        try {
+            RecordFrames.append(Paths.get(filename), block);
+            return true;
+        } catch (IOException e) {
+            System.out.println("Could not append record: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean writeBlocks(List<String> newBlocks) {
+        Path file = Paths.get(filename);
+        Path temp = Paths.get("temp.txt");
+        try (FileOutputStream out = new FileOutputStream(temp.toFile())) {
+            BufferedOutputStream buffered = new BufferedOutputStream(out);
+            for (String block : newBlocks) buffered.write(RecordFrames.frame(block));
+            buffered.flush();
+            out.getFD().sync();
+        } catch (IOException e) {
+            return false;
+        }
+        try {
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return true;
+        } catch (IOException e) {
+            System.out.println("Could not replace " + filename + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    // Entry point for StudentFileWatcher when another program touches students.txt.
+    public synchronized void checkForExternalChanges() {
+        syncWithStore();
+    }
+
+    // Folds edits made by someone else since our last write into the journal. Pure appends only read the new
+    // tail; anything else is diffed against the whole file as a common prefix/suffix change.
+    private void syncWithStore() {
+        File file = new File(filename);
+        if (file.length() == knownLength && file.lastModified() == knownModified) return;
+        if (knownLength >= 0 && file.length() > knownLength && Objects.equals(fileKey(file), knownKey) &&
+                endsWithLastBlock(knownLength)) {
+            readAppendedTail(file);
+            return;
+        }
+        List<String> stored = readBlocks();
+        int prefix = 0;
+        while (prefix < blocks.size() && prefix < stored.size() && blocks.get(prefix).equals(stored.get(prefix))) prefix++;
+        int suffix = 0;
+        while (suffix < blocks.size() - prefix && suffix < stored.size() - prefix &&
+                blocks.get(blocks.size() - 1 - suffix).equals(stored.get(stored.size() - 1 - suffix))) suffix++;
+
+        if (prefix + suffix < Math.max(blocks.size(), stored.size())) {
+            JournalDiff diff = journal.newDiff("external change");
+            for (int i = prefix; i < blocks.size() - suffix; i++) {
+                diff.removed.add(new JournalEntry(ids.get(i), i, blocks.get(i)));
+            }
+            for (int i = prefix; i < stored.size() - suffix; i++) {
+                diff.added.add(new JournalEntry(journal.newId(), i, stored.get(i)));
+            }
+            diff.applyTo(ids, blocks);
+            journal.append(diff, ids, blocks);
+            undoStack.clear();
+            redoStack.clear();
+            fireStoreReplaced();
+        }
+        rememberStore();
+    }
+
+    private void readAppendedTail(File file) {
+        byte[] tail;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            tail = new byte[(int) (raf.length() - knownLength)];
+            raf.seek(knownLength);
+            raf.readFully(tail);
+        } catch (IOException e) {
+            return;
+        }
+
+        RecordFrames.Scan scan = RecordFrames.scan(tail);
+        reportCorrupt(scan, knownLength);
+        List<String> appended = scan.blocks;
+        if (appended.isEmpty()) return; // the writer is mid-record; pick it up on its next change
+
+        JournalDiff diff = journal.newDiff("external append");
+        for (String block : appended) diff.added.add(new JournalEntry(journal.newId(), blocks.size() + diff.added.size(), block));
+        diff.applyTo(ids, blocks);
+        journal.append(diff, ids, blocks);
+        knownLength += scan.end;
+        knownModified = file.lastModified();
+
+        List<SemesterRecord> records = parseBlocks(appended, null);
+        for (SemesterRecord record : records) {
+            for (RecordStoreListener listener : listeners) listener.recordSaved(record);
+        }
+    }
+
+    // True when the bytes just before the given offset are still the last block we know about.
+    private boolean endsWithLastBlock(long offset) {
+        if (blocks.isEmpty()) return offset == 0;
+        byte[] expected = blocks.get(blocks.size() - 1).getBytes(Charset.defaultCharset());
+        if (expected.length > offset) return false;
+        byte[] actual = new byte[expected.length];
+        try (RandomAccessFile raf = new RandomAccessFile(filename, "r")) {
+            raf.seek(offset - expected.length);
+            raf.readFully(actual);
+        } catch (IOException e) {
+            return false;
+        }
+        return Arrays.equals(expected, actual);
+    }
+
+    private static Object fileKey(File file) {
+        try {
+            return Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void rememberStore() {
+        File file = new File(filename);
+        knownLength = file.length();
+        knownModified = file.lastModified();
+        knownKey = fileKey(file);
+    }
+
+    private List<String> readBlocks() {
+        try {
+            return scanStore().blocks;
+        } catch (IOException e) {
+            return new ArrayList<>();
+        }
+    }
+
+    // Only complete blocks with a good checksum are returned; anything else is skipped and reported.
+    private RecordFrames.Scan scanStore() throws IOException {
+        RecordFrames.Scan scan = RecordFrames.scan(Files.readAllBytes(Paths.get(filename)));
+        reportCorrupt(scan, 0);
+        return scan;
+    }
+
+    private void reportCorrupt(RecordFrames.Scan scan, long base) {
+        for (int[] region : scan.corrupt) {
+            System.out.println("Skipping damaged record in " + filename + " at offset " + (base + region[0]));
+        }
+    }
+
+    // Reads every record whose name has the given prefix, or all records when studentName is null.
+    public List<SemesterRecord> load(String studentName) throws IOException {
+        return parseBlocks(scanStore().blocks, studentName);
+    }
+
+    // Parses each block on its own, so a malformed record (e.g. appended by another program) is skipped and reported
+    // instead of ending the whole parse.
+    static List<SemesterRecord> parseBlocks(List<String> blocks, String studentName) {
+        List<SemesterRecord> records = new ArrayList<>();
+        for (String block : blocks) {
+            try {
+                records.addAll(parseRecords(new Scanner(block), studentName));
+            } catch (RuntimeException e) {
+                System.out.println("Skipping unreadable record: " + block.split("\n", 2)[0].trim());
+            }
+        }
+        return records;
+    }
+
+    static List<SemesterRecord> parseRecords(Scanner sc, String studentName) {
+        List<SemesterRecord> records = new ArrayList<>();
+        while (sc.hasNextLine()) {
+            String line = sc.nextLine().trim();
+            if (line.startsWith("Name: ") &&
+                    (studentName == null || line.startsWith("Name: " + studentName.trim()))) {
+                records.add(readRecord(line.substring(6), sc));
+            }
+        }
+        return records;
+    }
+
+    private static SemesterRecord readRecord(String studentName, Scanner sc) {
+        String semester = sc.nextLine().trim().substring(10);
+        double gpa = Double.parseDouble(sc.nextLine().trim().substring(5));
+        String classification = sc.nextLine().trim().substring(15);
+        String policyName = GradingPolicies.BUILT_IN;
+        List<Subject> subjects = new ArrayList<>();
+        GradingPolicy policy = null;
+        while (sc.hasNextLine()) {
+            String subLine = sc.nextLine();
+            if (subLine.trim().equals("------------------------")) break;
+            if (subLine.startsWith("Policy: ")) {
+                policyName = subLine.substring(8).trim();
+            } else if (subLine.startsWith("  ")) {
+                if (policy == null) policy = GradingPolicies.get(policyName);
+                String[] parts = subLine.substring(2).split(" \\| ");
+                int marks = Integer.parseInt(parts[1].substring(7));
+                int credits = Integer.parseInt(parts[2].substring(9));
+                subjects.add(new Subject(parts[0], marks, credits, policy));
+            }
+        }
+        return new SemesterRecord(studentName, semester, gpa, classification, subjects, policyName);
+    }
+}
+
+// Watches the directory of students.txt on a daemon thread and runs the callback whenever the file changes.
+class StudentFileWatcher {
+    private final WatchService watchService;
+
+    public StudentFileWatcher(String filename, Runnable onChange) throws IOException {
+        Path file = Paths.get(filename).toAbsolutePath();
+        watchService = FileSystems.getDefault().newWatchService();
+        file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+
+        Thread thread = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = watchService.take();
+                    boolean changed = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context())) {
+                            changed = true;
+                        }
+                    }
+                    if (changed) {
+                        try {
+                            onChange.run();
+                        } catch (RuntimeException e) {
+                            System.out.println("Failed to apply outside change to " + file.getFileName() + ": " + e);
+                        }
+                    }
+                    if (!key.reset()) break;
+                }
+            } catch (InterruptedException | ClosedWatchServiceException ignored) {}
+        }, "students-file-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException ignored) {}
+    }
+}
+
+class RecordProtocol {
+    static final int DEFAULT_PORT = 5599;
+    static final int MAX_FRAME = 64 * 1024 * 1024;
+    static final int MAX_LOGIN_FRAME = 4096; // limit until the connection has logged in
+    static final int CALL_TIMEOUT_SECONDS = 30;
+
+    static final byte LOAD = 1, SAVE = 2, DELETE = 3, REGRADE_ALL = 4, UNDO = 5, REDO = 6,
+            PEEK_UNDO = 7, PEEK_REDO = 8, RESTORE = 9, LOGIN = 10;
+    static final byte OK = 20, NONE = 21, FAIL = 22;
+    static final byte EVENT_SAVED = 30, EVENT_DELETED = 31, EVENT_REPLACED = 32;
+
+    static class Frame {
+        final byte type;
+        final String payload;
+
+        Frame(byte type, String payload) {
+            this.type = type;
+            this.payload = payload;
+        }
+    }
+
+    static int port() {
+        return Integer.getInteger("comsats.port", DEFAULT_PORT);
+    }
+
+    static boolean isEvent(byte type) {
+        return type >= EVENT_SAVED;
+    }
+
+    // Frame layout: int payload length, byte type, UTF-8 payload.
+    static ByteBuffer encode(byte type, String payload) {
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf = ByteBuffer.allocate(5 + bytes.length);
+        buf.putInt(bytes.length).put(type).put(bytes);
+        buf.flip();
+        return buf;
+    }
+
+    static String toPayload(List<SemesterRecord> records) {
+        StringBuilder sb = new StringBuilder();
+        for (SemesterRecord record : records) sb.append(record.toFileString());
+        return sb.toString();
+    }
+
+    static List<SemesterRecord> fromPayload(String payload) {
+        return FileHandler.parseRecords(new Scanner(payload), null);
+    }
+}
+
+// Owns students.txt for every client on this machine; one selector thread serves all connections.
+class RecordServer {
+    private final FileHandler store = new FileHandler();
+    private final UserManager userManager = new UserManager();
+    private final Selector selector;
+    private final int port;
+    private volatile boolean externalChange;
+
+    private static class Connection {
+        ByteBuffer in = ByteBuffer.allocate(8192);
+        final Deque<ByteBuffer> out = new ArrayDeque<>();
+        User user; // set by a successful LOGIN; nothing else is served before that
+    }
+
+    public RecordServer(int port) throws IOException {
+        this.port = port;
+        selector = Selector.open();
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+
+        store.addListener(new RecordStoreListener() {
+            @Override
+            public void recordSaved(SemesterRecord record) {
+                broadcast(RecordProtocol.EVENT_SAVED, record.toFileString());
+            }
+
+            @Override
+            public void recordsDeleted(String studentName, List<SemesterRecord> removed) {
+                broadcast(RecordProtocol.EVENT_DELETED, studentName + "\n" + RecordProtocol.toPayload(removed));
+            }
+
+            @Override
+            public void storeReplaced(List<SemesterRecord> records) {
+                broadcast(RecordProtocol.EVENT_REPLACED, RecordProtocol.toPayload(records));
+            }
+        });
+
+        // The watcher thread only flags the change; the store is re-read on the selector thread.
+        new StudentFileWatcher(store.getFilename(), () -> {
+            externalChange = true;
+            selector.wakeup();
+        });
+    }
+
+    public void run() throws IOException {
+        System.out.println("Record server listening on 127.0.0.1:" + port);
+        while (true) {
+            selector.select();
+            if (externalChange) {
+                externalChange = false;
+                try {
+                    store.checkForExternalChanges();
+                } catch (RuntimeException e) {
+                    System.out.println("Failed to apply outside change to " + store.getFilename() + ": " + e);
+                }
+            }
+            Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+            while (it.hasNext()) {
+                SelectionKey key = it.next();
+                it.remove();
+                try {
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        SocketChannel client = ((ServerSocketChannel) key.channel()).accept();
+                        if (client == null) continue;
+                        client.configureBlocking(false);
+                        client.register(selector, SelectionKey.OP_READ, new Connection());
+                        continue;
+                    }
+                    if (key.isReadable()) read(key);
+                    if (key.isValid() && key.isWritable()) write(key);
+                } catch (IOException e) {
+                    close(key);
+                }
+            }
+        }
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        Connection conn = (Connection) key.attachment();
+        if (((SocketChannel) key.channel()).read(conn.in) < 0) {
+            close(key);
+            return;
+        }
+        conn.in.flip();
+        while (conn.in.remaining() >= 5) {
+            int length = conn.in.getInt(conn.in.position());
+            int limit = conn.user == null ? RecordProtocol.MAX_LOGIN_FRAME : RecordProtocol.MAX_FRAME;
+            if (length < 0 || length > limit) throw new IOException("Bad frame length " + length);
+            if (conn.in.remaining() < 5 + length) {
+                if (conn.in.capacity() < 5 + length) {
+                    ByteBuffer bigger = ByteBuffer.allocate(Math.max(conn.in.capacity() * 2, 5 + length));
+                    bigger.put(conn.in);
+                    conn.in = bigger;
+                    return;
+                }
+                break;
+            }
+            conn.in.getInt();
+            byte type = conn.in.get();
+            byte[] payload = new byte[length];
+            conn.in.get(payload);
+            handle(key, type, new String(payload, StandardCharsets.UTF_8));
+        }
+        conn.in.compact();
+    }
+
+    private void handle(SelectionKey key, byte type, String payload) {
+        Connection conn = (Connection) key.attachment();
+        if (type == RecordProtocol.LOGIN) {
+            int split = payload.indexOf('\n');
+            conn.user = split < 0 ? null : userManager.login(payload.substring(0, split), payload.substring(split + 1));
+            if (conn.user == null) send(key, RecordProtocol.FAIL, "Invalid username or password");
+            else send(key, RecordProtocol.OK, conn.user.isAdmin() ? "admin" : "user");
+            return;
+        }
+        if (conn.user == null) {
+            send(key, RecordProtocol.FAIL, "Login required");
+            return;
+        }
+        if (changesRecords(type) && !conn.user.isAdmin()) {
+            send(key, RecordProtocol.FAIL, "Only admins can change records");
+            return;
+        }
+        try {
+            switch (type) {
+                case RecordProtocol.LOAD:
+                    send(key, RecordProtocol.OK, RecordProtocol.toPayload(store.load(payload.isEmpty() ? null : payload)));
+                    break;
+                case RecordProtocol.SAVE:
+                    List<SemesterRecord> saved = RecordProtocol.fromPayload(payload);
+                    reply(key, saved.size() == 1 && store.save(saved.get(0)));
+                    break;
+                case RecordProtocol.DELETE:
+                    reply(key, store.delete(payload));
+                    break;
+                case RecordProtocol.REGRADE_ALL:
+                    int regraded = store.regradeAll(payload);
+                    send(key, regraded >= 0 ? RecordProtocol.OK : RecordProtocol.FAIL, String.valueOf(regraded));
+                    break;
+                case RecordProtocol.UNDO:
+                    replyLabel(key, store.undo());
+                    break;
+                case RecordProtocol.REDO:
+                    replyLabel(key, store.redo());
+                    break;
+                case RecordProtocol.PEEK_UNDO:
+                    replyLabel(key, store.peekUndo());
+                    break;
+                case RecordProtocol.PEEK_REDO:
+                    replyLabel(key, store.peekRedo());
+                    break;
+                case RecordProtocol.RESTORE:
+                    reply(key, store.restoreTo(Long.parseLong(payload)));
+                    break;
+                default:
+                    send(key, RecordProtocol.FAIL, "Unknown request " + type);
+            }
+        } catch (IOException | RuntimeException e) {
+            send(key, RecordProtocol.FAIL, String.valueOf(e.getMessage()));
+        }
+    }
+
+    private static boolean changesRecords(byte type) {
+        return type == RecordProtocol.SAVE || type == RecordProtocol.DELETE || type == RecordProtocol.REGRADE_ALL ||
+                type == RecordProtocol.UNDO || type == RecordProtocol.REDO || type == RecordProtocol.RESTORE;
+    }
+
+    private void reply(SelectionKey key, boolean ok) {
+        send(key, ok ? RecordProtocol.OK : RecordProtocol.FAIL, "");
+    }
+
+    private void replyLabel(SelectionKey key, String label) {
+        send(key, label != null ? RecordProtocol.OK : RecordProtocol.NONE, label != null ? label : "");
+    }
+
+    private void broadcast(byte type, String payload) {
+        for (SelectionKey key : selector.keys()) {
+            if (key.isValid() && key.attachment() instanceof Connection && ((Connection) key.attachment()).user != null) {
+                send(key, type, payload);
+            }
+        }
+    }
+
+    private void send(SelectionKey key, byte type, String payload) {
+        ((Connection) key.attachment()).out.add(RecordProtocol.encode(type, payload));
+        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        Connection conn = (Connection) key.attachment();
+        SocketChannel channel = (SocketChannel) key.channel();
+        while (!conn.out.isEmpty()) {
+            ByteBuffer head = conn.out.peek();
+            channel.write(head);
+            if (head.hasRemaining()) return;
+            conn.out.poll();
+        }
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    private void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {}
+    }
+}
+
+// RecordStore backed by a RecordServer; a reader thread routes responses to the caller and pushes events to listeners.
+class RecordClient implements RecordStore {
+    private final SocketChannel channel;
+    private final BlockingQueue<RecordProtocol.Frame> responses = new LinkedBlockingQueue<>();
+    private final List<RecordStoreListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean closed;
+
+    private RecordClient(SocketChannel channel) {
+        this.channel = channel;
+        Thread reader = new Thread(this::readLoop, "record-client-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    // Returns null when no server is running, so the caller can fall back to the local file. Throws when a server
+    // is running but does not accept the login.
+    public static RecordClient connect(int port, String username, String password) throws IOException {
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        } catch (IOException e) {
+            return null;
+        }
+        RecordClient client = new RecordClient(channel);
+        RecordProtocol.Frame response = client.call(RecordProtocol.LOGIN, username.trim() + "\n" + password);
+        if (response.type != RecordProtocol.OK) {
+            client.closed = true;
+            channel.close();
+            throw new IOException(response.payload);
+        }
+        return client;
+    }
+
+    private void readLoop() {
+        ByteBuffer header = ByteBuffer.allocate(5);
+        try {
+            while (true) {
+                header.clear();
+                readFully(header);
+                header.flip();
+                int length = header.getInt();
+                byte type = header.get();
+                if (length < 0 || length > RecordProtocol.MAX_FRAME) throw new IOException("Bad frame length " + length);
+                ByteBuffer body = ByteBuffer.allocate(length);
+                readFully(body);
+                String payload = new String(body.array(), StandardCharsets.UTF_8);
+                if (RecordProtocol.isEvent(type)) dispatch(type, payload);
+                else responses.put(new RecordProtocol.Frame(type, payload));
+            }
+        } catch (IOException | InterruptedException e) {
+            if (!closed) System.out.println("Lost connection to record server.");
+            closed = true;
+            responses.offer(new RecordProtocol.Frame(RecordProtocol.FAIL, "Connection to record server lost"));
+        }
+    }
+
+    private void readFully(ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            if (channel.read(buf) < 0) throw new EOFException();
+        }
+    }
+
+    private void dispatch(byte type, String payload) {
+        for (RecordStoreListener listener : listeners) {
+            if (type == RecordProtocol.EVENT_SAVED) {
+                for (SemesterRecord record : RecordProtocol.fromPayload(payload)) listener.recordSaved(record);
+            } else if (type == RecordProtocol.EVENT_DELETED) {
+                int split = payload.indexOf('\n');
+                listener.recordsDeleted(payload.substring(0, split), RecordProtocol.fromPayload(payload.substring(split + 1)));
+            } else if (type == RecordProtocol.EVENT_REPLACED) {
+                listener.storeReplaced(RecordProtocol.fromPayload(payload));
+            }
+        }
+    }
+
+    private synchronized RecordProtocol.Frame call(byte type, String payload) {
+        if (closed) return new RecordProtocol.Frame(RecordProtocol.FAIL, "Not connected");
+        try {
+            ByteBuffer frame = RecordProtocol.encode(type, payload);
+            while (frame.hasRemaining()) channel.write(frame);
+            RecordProtocol.Frame response = responses.poll(RecordProtocol.CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (response == null) {
+                // a late reply would be taken as the answer to the next call, so this connection is done
+                closed = true;
+                channel.close();
+                return new RecordProtocol.Frame(RecordProtocol.FAIL, "Record server did not respond");
+            }
+            return response;
+        } catch (IOException | InterruptedException e) {
+            return new RecordProtocol.Frame(RecordProtocol.FAIL, String.valueOf(e.getMessage()));
+        }
+    }
+
+    private boolean ok(byte type, String payload) {
+        return call(type, payload).type == RecordProtocol.OK;
+    }
+
+    private String label(byte type) {
+        RecordProtocol.Frame response = call(type, "");
+        return response.type == RecordProtocol.OK ? response.payload : null;
+    }
+
+    public boolean save(SemesterRecord record) {
+        return ok(RecordProtocol.SAVE, record.toFileString());
+    }
+
+    public boolean delete(String studentName) {
+        return ok(RecordProtocol.DELETE, studentName.trim());
+    }
+
+    public int regradeAll(String policyName) {
+        RecordProtocol.Frame response = call(RecordProtocol.REGRADE_ALL, policyName);
+        return response.type == RecordProtocol.OK ? Integer.parseInt(response.payload) : -1;
+    }
+
+    public List<SemesterRecord> load(String studentName) throws IOException {
+        RecordProtocol.Frame response = call(RecordProtocol.LOAD, studentName == null ? "" : studentName.trim());
+        if (response.type != RecordProtocol.OK) throw new IOException(response.payload);
+        return RecordProtocol.fromPayload(response.payload);
+    }
+
+    public String undo() { return label(RecordProtocol.UNDO); }
+    public String redo() { return label(RecordProtocol.REDO); }
+    public String peekUndo() { return label(RecordProtocol.PEEK_UNDO); }
+    public String peekRedo() { return label(RecordProtocol.PEEK_REDO); }
+
+    public boolean restoreTo(long time) {
+        return ok(RecordProtocol.RESTORE, String.valueOf(time));
+    }
+
+    public void addListener(RecordStoreListener listener) {
+        listeners.add(listener);
+    }
+}
+
+// LRU cache of parsed student histories, bounded both by entry count and by total records + subjects held.
+class HistoryCache {
+    private final int maxEntries;
+    private final int maxWeight;
+    private final LinkedHashMap<String, List<CompactRecord>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private CompactRecordStore compactStore = new CompactRecordStore();
+    private int weight;
+    private long hits, misses, evictions;
+
+    public HistoryCache(int maxEntries, int maxWeight) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    public static String normalize(String studentName) {
+        return studentName.trim();
+    }
+
+    public synchronized List<SemesterRecord> get(String studentName) {
+        List<CompactRecord> packed = entries.get(normalize(studentName));
+        if (packed == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        List<SemesterRecord> history = new ArrayList<>(packed.size());
+        for (CompactRecord rec : packed) history.add(compactStore.expand(rec));
+        return Collections.unmodifiableList(history);
+    }
+
+    public synchronized void put(String studentName, List<SemesterRecord> history) {
+        String key = normalize(studentName);
+        int entryWeight = 1;
+        for (SemesterRecord rec : history) entryWeight += 1 + rec.subjects.size();
+        if (entryWeight > maxWeight) return;
+        List<CompactRecord> packed = new ArrayList<>(history.size());
+        try {
+            for (SemesterRecord rec : history) packed.add(compactStore.compact(rec));
+        } catch (IllegalArgumentException e) {
+            for (CompactRecord rec : packed) compactStore.release(rec);
+            return; // a value the compact form cannot hold, leave it uncached
+        }
+        List<CompactRecord> previous = entries.put(key, packed);
+        if (previous != null) drop(previous);
+        weight += entryWeight;
+
+        Iterator<Map.Entry<String, List<CompactRecord>>> it = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || weight > maxWeight) && it.hasNext()) {
+            Map.Entry<String, List<CompactRecord>> eldest = it.next();
+            if (eldest.getKey().equals(key)) continue;
+            drop(eldest.getValue());
+            it.remove();
+            evictions++;
+        }
+    }
+
+    // Drops every cached lookup whose prefix match would include this student.
+    public synchronized void invalidate(String studentName) {
+        String name = studentName.trim();
+        Iterator<Map.Entry<String, List<CompactRecord>>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, List<CompactRecord>> entry = it.next();
+            if (name.startsWith(entry.getKey())) {
+                drop(entry.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        compactStore = new CompactRecordStore();
+        weight = 0;
+    }
+
+    public synchronized String stats() {
+        long lookups = hits + misses;
+        return String.format("%d entries, weight %d/%d, %d strings interned, %d hits, %d misses (%.1f%% hit rate), %d evictions",
+                entries.size(), weight, maxWeight, compactStore.internedStrings(), hits, misses,
+                lookups > 0 ? hits * 100.0 / lookups : 0.0, evictions);
+    }
+
+    private void drop(List<CompactRecord> history) {
+        weight -= weightOf(history);
+        for (CompactRecord rec : history) compactStore.release(rec);
+    }
+
+    private static int weightOf(List<CompactRecord> history) {
+        int total = 1;
+        for (CompactRecord rec : history) total += 1 + rec.subjectCount();
+        return total;
     }
 }
 
-class SemesterRecord {
-    String studentName;
-    String semester;
-    double gpa;
-    String classification;
-    List<Subject> subjects = new ArrayList<>();
+class CourseStats {
+    final String subject;
+    int enrolments;
+    long totalMarks;
+    int failures;
+    int totalCredits;
+    double qualityPoints;
+    final int[] markCounts = new int[101];
+    final int[] gradeCounts = new int[6]; // A, B, C, D, E, F by leading letter
+
+    public CourseStats(String subject) {
+        this.subject = subject;
+    }
 
-    public SemesterRecord(String studentName, String semester, double gpa, String classification, List<Subject> subjects) {
-        this.studentName = studentName;
-        this.semester = semester;
-        this.gpa = gpa;
-        this.classification = classification;
-        this.subjects.addAll(subjects);
+    void add(Subject sub, int sign) {
+        enrolments += sign;
+        totalMarks += (long) sign * sub.marks;
+        markCounts[Math.max(0, Math.min(100, sub.marks))] += sign;
+        int grade = sub.letterGrade.isEmpty() ? 5 : sub.letterGrade.charAt(0) - 'A';
+        if (grade < 0 || grade > 5) grade = 5;
+        gradeCounts[grade] += sign;
+        if (grade == 5) failures += sign;
+        totalCredits += sign * sub.credits;
+        qualityPoints += sign * sub.points * sub.credits;
     }
 
-    public String toFileString() {
+    void merge(CourseStats other) {
+        enrolments += other.enrolments;
+        totalMarks += other.totalMarks;
+        failures += other.failures;
+        totalCredits += other.totalCredits;
+        qualityPoints += other.qualityPoints;
+        for (int i = 0; i < markCounts.length; i++) markCounts[i] += other.markCounts[i];
+        for (int i = 0; i < gradeCounts.length; i++) gradeCounts[i] += other.gradeCounts[i];
+    }
+
+    public double mean() {
+        return enrolments > 0 ? (double) totalMarks / enrolments : 0.0;
+    }
+
+    public double median() {
+        if (enrolments <= 0) return 0.0;
+        int lower = nthMark((enrolments - 1) / 2);
+        int upper = nthMark(enrolments / 2);
+        return (lower + upper) / 2.0;
+    }
+
+    private int nthMark(int n) {
+        int seen = 0;
+        for (int mark = 0; mark < markCounts.length; mark++) {
+            seen += markCounts[mark];
+            if (seen > n) return mark;
+        }
+        return 100;
+    }
+
+    public double failRate() {
+        return enrolments > 0 ? failures * 100.0 / enrolments : 0.0;
+    }
+
+    public String histogram() {
         StringBuilder sb = new StringBuilder();
-        sb.append("Name: ").append(studentName).append("\n");
-        sb.append("Semester: ").append(semester).append("\n");
-        sb.append("GPA: ").append(String.format("%.2f", gpa)).append("\n");
-        sb.append("Classification: ").append(classification).append("\n");
-        sb.append("Subjects:\n");
-        for (Subject sub : subjects) {
-            sb.append("  ").append(sub.name)
-              .append(" | Marks: ").append(sub.marks)
-              .append(" | Credits: ").append(sub.credits)
-              .append(" | Grade: ").append(sub.letterGrade).append("\n");
+        for (int i = 0; i < gradeCounts.length; i++) {
+            if (i == 4 && gradeCounts[i] == 0) continue; // E only shows up on scales that use it
+            if (sb.length() > 0) sb.append("  ");
+            sb.append((char) ('A' + i)).append(": ").append(gradeCounts[i]);
         }
-        sb.append("------------------------\n");
         return sb.toString();
     }
 }
 
-class FileHandler {
-    private final String filename = "students.txt";
+class CourseAnalytics {
+    private static final int THRESHOLD = 256;
 
-    public boolean save(SemesterRecord record) {
-        try (FileWriter fw = new FileWriter(filename, true)) {
-            fw.write(record.toFileString());
-            return true;
-        } catch (IOException e) {
-            return false;
+    private Map<String, CourseStats> courses = new HashMap<>();
+    private double totalQualityPoints;
+
+    // Recomputes every course from scratch, splitting the record set across the fork/join pool.
+    public void rebuild(List<SemesterRecord> records) {
+        courses = ForkJoinPool.commonPool().invoke(new AggregateTask(records, 0, records.size()));
+        totalQualityPoints = 0;
+        for (CourseStats stats : courses.values()) totalQualityPoints += stats.qualityPoints;
+    }
+
+    public void add(SemesterRecord record) {
+        apply(record, 1);
+    }
+
+    public void remove(SemesterRecord record) {
+        apply(record, -1);
+    }
+
+    private void apply(SemesterRecord record, int sign) {
+        for (Subject sub : record.subjects) {
+            CourseStats stats = courses.computeIfAbsent(sub.name, CourseStats::new);
+            stats.add(sub, sign);
+            totalQualityPoints += sign * sub.points * sub.credits;
+            if (stats.enrolments <= 0) courses.remove(sub.name);
         }
     }
 
-    public boolean delete(String studentName) {
-        File file = new File(filename);
-        File temp = new File("temp.txt");
-        boolean deleted = false;
-        try (Scanner sc = new Scanner(file); PrintWriter pw = new PrintWriter(temp)) {
-            boolean skip = false;
-            while (sc.hasNextLine()) {
-                String line = sc.nextLine();
-                if (line.trim().startsWith("Name: " + studentName.trim())) {
-                    deleted = true;
-                    skip = true;
+    // Share of all earned quality points (points x credits) that this course accounts for.
+    public double contribution(CourseStats stats) {
+        return totalQualityPoints > 0 ? stats.qualityPoints * 100.0 / totalQualityPoints : 0.0;
+    }
+
+    public List<CourseStats> getCourses() {
+        List<CourseStats> sorted = new ArrayList<>(courses.values());
+        sorted.sort((a, b) -> a.subject.compareToIgnoreCase(b.subject));
+        return sorted;
+    }
+
+    private static class AggregateTask extends RecursiveTask<Map<String, CourseStats>> {
+        private final List<SemesterRecord> records;
+        private final int from, to;
+
+        AggregateTask(List<SemesterRecord> records, int from, int to) {
+            this.records = records;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Map<String, CourseStats> compute() {
+            if (to - from <= THRESHOLD) {
+                Map<String, CourseStats> partial = new HashMap<>();
+                for (int i = from; i < to; i++) {
+                    for (Subject sub : records.get(i).subjects) {
+                        partial.computeIfAbsent(sub.name, CourseStats::new).add(sub, 1);
+                    }
                 }
-                if (!skip) pw.println(line);
-                if (line.trim().equals("------------------------")) skip = false;
+                return partial;
             }
-        } catch (Exception e) {
-            return false;
+            int mid = (from + to) >>> 1;
+            AggregateTask left = new AggregateTask(records, from, mid);
+            left.fork();
+            Map<String, CourseStats> right = new AggregateTask(records, mid, to).compute();
+            Map<String, CourseStats> merged = left.join();
+            if (merged.size() < right.size()) {
+                Map<String, CourseStats> swap = merged;
+                merged = right;
+                right = swap;
+            }
+            for (CourseStats stats : right.values()) {
+                CourseStats existing = merged.putIfAbsent(stats.subject, stats);
+                if (existing != null) existing.merge(stats);
+            }
+            return merged;
+        }
+    }
+}
+
+class GpaSimulator {
+    private final List<Integer> marks = new ArrayList<>(); // null marks = subject still to be taken
+    private final List<Integer> credits = new ArrayList<>();
+    private GradingPolicy policy;
+    private double gradedPoints;
+    private int gradedCredits;
+    private int pendingCredits;
+    private double historyPoints;
+    private int historyCredits;
+
+    public GpaSimulator(GradingPolicy policy) {
+        this.policy = policy;
+    }
+
+    public void addRow(Integer mark, int credit) {
+        marks.add(mark);
+        credits.add(credit);
+        apply(marks.size() - 1, 1);
+    }
+
+    public void removeRow(int row) {
+        apply(row, -1);
+        marks.remove(row);
+        credits.remove(row);
+    }
+
+    // Swaps one row's contribution out of the running sums, so each edit costs O(1).
+    public void setRow(int row, Integer mark, int credit) {
+        apply(row, -1);
+        marks.set(row, mark);
+        credits.set(row, credit);
+        apply(row, 1);
+    }
+
+    private void apply(int row, int sign) {
+        int credit = credits.get(row);
+        Integer mark = marks.get(row);
+        if (mark == null) {
+            pendingCredits += sign * credit;
+        } else {
+            gradedCredits += sign * credit;
+            gradedPoints += sign * policy.points(mark) * credit;
         }
-        file.delete();
-        temp.renameTo(file);
-        return deleted;
+    }
+
+    public void setPolicy(GradingPolicy policy) {
+        this.policy = policy;
+        gradedPoints = 0;
+        for (int row = 0; row < marks.size(); row++) {
+            if (marks.get(row) != null) gradedPoints += policy.points(marks.get(row)) * credits.get(row);
+        }
+    }
+
+    public void setHistory(List<SemesterRecord> history) {
+        historyPoints = 0;
+        historyCredits = 0;
+        for (SemesterRecord rec : history) {
+            for (Subject sub : rec.subjects) {
+                historyPoints += sub.points * sub.credits;
+                historyCredits += sub.credits;
+            }
+        }
+    }
+
+    public GradingPolicy getPolicy() { return policy; }
+    public int getGradedCredits() { return gradedCredits; }
+    public int getPendingCredits() { return pendingCredits; }
+    public int getHistoryCredits() { return historyCredits; }
+
+    public double gpa() {
+        return gradedCredits > 0 ? gradedPoints / gradedCredits : 0.0;
+    }
+
+    public double cgpa() {
+        int total = historyCredits + gradedCredits;
+        return total > 0 ? (historyPoints + gradedPoints) / total : 0.0;
+    }
+
+    public String classification() {
+        return policy.classify(gpa());
+    }
+
+    // Lowest mark that, scored in every remaining subject, lifts the semester GPA to the target; -1 if out of reach.
+    public int minimumMarksFor(double target) {
+        if (pendingCredits <= 0) return gpa() >= target ? 0 : -1;
+        double needed = (target * (gradedCredits + pendingCredits) - gradedPoints) / pendingCredits;
+        for (int mark = 0; mark <= 100; mark++) {
+            if (policy.points(mark) >= needed - 1e-9) return mark;
+        }
+        return -1;
     }
 }
 
@@ -455,10 +2604,18 @@ class LoginFrame extends JFrame {
 
             User loggedInUser = userManager.login(user, pass);
             if (loggedInUser != null) {
+                RecordClient client;
+                try {
+                    client = RecordClient.connect(RecordProtocol.port(), user, pass);
+                } catch (IOException ex) {
+                    messageLabel.setForeground(Color.RED);
+                    messageLabel.setText("Record server refused login: " + ex.getMessage());
+                    return;
+                }
                 messageLabel.setForeground(new Color(0, 150, 0));
                 messageLabel.setText("Login Successful!");
                 dispose();
-                SwingUtilities.invokeLater(() -> new ComsatsStudentHelper(loggedInUser).setVisible(true));
+                SwingUtilities.invokeLater(() -> new ComsatsStudentHelper(loggedInUser, client).setVisible(true));
             } else {
                 messageLabel.setForeground(Color.RED);
                 messageLabel.setText("Invalid username or password!");
@@ -468,27 +2625,273 @@ class LoginFrame extends JFrame {
     }
 }
 
+class WhatIfPanel extends JPanel {
+    private static final int SUBJECT = 0, MARKS = 1, CREDITS = 2, GRADE = 3, POINTS = 4;
+
+    private final RecordStore store;
+    private final Consumer<SemesterRecord> onUseRecord;
+    private final GpaSimulator simulator = new GpaSimulator(GradingPolicies.getDefault());
+    private final DefaultTableModel model;
+    private final JTable table;
+    private final JTextField nameField = new JTextField(14);
+    private final JTextField semesterField = new JTextField(10);
+    private final JTextField targetField = new JTextField(5);
+    private final JComboBox<String> policyBox = new JComboBox<>();
+    private final JLabel gpaLabel = new JLabel();
+    private final JLabel cgpaLabel = new JLabel();
+    private final JLabel classLabel = new JLabel();
+    private final JLabel creditsLabel = new JLabel();
+    private final JLabel targetLabel = new JLabel(" ");
+    private boolean updating;
+
+    public WhatIfPanel(RecordStore store, Consumer<SemesterRecord> onUseRecord) {
+        super(new BorderLayout(15, 15));
+        this.store = store;
+        this.onUseRecord = onUseRecord;
+        setBorder(new EmptyBorder(20, 20, 20, 20));
+        setBackground(Color.WHITE);
+
+        JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 5));
+        top.setBackground(Color.WHITE);
+        top.setBorder(BorderFactory.createTitledBorder("Student & Semester"));
+        top.add(new JLabel("Student Name:"));
+        top.add(nameField);
+        top.add(new JLabel("Semester:"));
+        top.add(semesterField);
+        top.add(new JLabel("Grading Policy:"));
+        for (String policyName : GradingPolicies.names()) policyBox.addItem(policyName);
+        policyBox.setSelectedItem(simulator.getPolicy().name);
+        top.add(policyBox);
+        JButton historyBtn = new JButton("Load History for CGPA");
+        top.add(historyBtn);
+        add(top, BorderLayout.NORTH);
+
+        model = new DefaultTableModel(new Object[]{"Subject", "Marks (blank = remaining)", "Credits", "Grade", "Points"}, 0) {
+            @Override
+            public Class<?> getColumnClass(int column) {
+                return column == MARKS || column == CREDITS ? Integer.class : String.class;
+            }
+
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return column <= CREDITS;
+            }
+        };
+        table = new JTable(model);
+        table.setRowHeight(28);
+        table.getTableHeader().setFont(new Font("Arial", Font.BOLD, 15));
+        table.getTableHeader().setBackground(new Color(57, 49, 133));
+        table.getTableHeader().setForeground(Color.WHITE);
+        table.putClientProperty("terminateEditOnFocusLost", Boolean.TRUE);
+        JScrollPane scroll = new JScrollPane(table);
+        scroll.setBorder(BorderFactory.createTitledBorder("Subjects (edit cells to see results instantly)"));
+        add(scroll, BorderLayout.CENTER);
+
+        JPanel side = new JPanel(new GridLayout(11, 1, 5, 10));
+        side.setBackground(Color.WHITE);
+        side.setBorder(BorderFactory.createTitledBorder("Live Result"));
+        side.setPreferredSize(new Dimension(340, 0));
+        Font resultFont = new Font("Arial", Font.BOLD, 18);
+        for (JLabel label : new JLabel[]{gpaLabel, cgpaLabel, classLabel, creditsLabel}) {
+            label.setFont(resultFont);
+            side.add(label);
+        }
+        JButton addBtn = new JButton("Add Subject");
+        JButton removeBtn = new JButton("Remove Selected Subject");
+        side.add(addBtn);
+        side.add(removeBtn);
+        JPanel targetPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        targetPanel.setBackground(Color.WHITE);
+        targetPanel.add(new JLabel("Target GPA:"));
+        targetPanel.add(targetField);
+        JButton solveBtn = new JButton("Solve");
+        targetPanel.add(solveBtn);
+        side.add(targetPanel);
+        side.add(targetLabel);
+        JButton useBtn = new JButton("Use as Current Record");
+        side.add(useBtn);
+        add(side, BorderLayout.EAST);
+
+        model.addTableModelListener(e -> {
+            if (updating) return;
+            if (e.getType() == TableModelEvent.UPDATE && e.getFirstRow() >= 0 &&
+                    (e.getColumn() == MARKS || e.getColumn() == CREDITS || e.getColumn() == TableModelEvent.ALL_COLUMNS)) {
+                for (int row = e.getFirstRow(); row <= Math.min(e.getLastRow(), model.getRowCount() - 1); row++) {
+                    syncRow(row);
+                }
+                updateResults();
+            }
+        });
+
+        addBtn.addActionListener(e -> {
+            int row = model.getRowCount();
+            simulator.addRow(null, 3);
+            updating = true;
+            model.addRow(new Object[]{"Subject " + (row + 1), null, 3, "-", "-"});
+            updating = false;
+            updateResults();
+        });
+        removeBtn.addActionListener(e -> {
+            int row = table.getSelectedRow();
+            if (row < 0) return;
+            if (table.isEditing()) table.getCellEditor().cancelCellEditing();
+            simulator.removeRow(row);
+            updating = true;
+            model.removeRow(row);
+            updating = false;
+            updateResults();
+        });
+        policyBox.addActionListener(e -> {
+            simulator.setPolicy(GradingPolicies.get((String) policyBox.getSelectedItem()));
+            for (int row = 0; row < model.getRowCount(); row++) showGrade(row);
+            updateResults();
+        });
+        historyBtn.addActionListener(e -> loadHistory());
+        solveBtn.addActionListener(e -> solveTarget());
+        targetField.addActionListener(e -> solveTarget());
+        useBtn.addActionListener(e -> useAsRecord());
+
+        updateResults();
+    }
+
+    // Clamps the edited cells into range and pushes the row's new contribution into the simulator.
+    private void syncRow(int row) {
+        Integer mark = (Integer) model.getValueAt(row, MARKS);
+        Integer credit = (Integer) model.getValueAt(row, CREDITS);
+        Integer fixedMark = mark == null ? null : Math.max(0, Math.min(100, mark));
+        int fixedCredit = credit == null ? 1 : Math.max(1, Math.min(6, credit));
+        updating = true;
+        if (fixedMark != null && !fixedMark.equals(mark)) model.setValueAt(fixedMark, row, MARKS);
+        if (credit == null || fixedCredit != credit) model.setValueAt(fixedCredit, row, CREDITS);
+        updating = false;
+        simulator.setRow(row, fixedMark, fixedCredit);
+        showGrade(row);
+    }
+
+    private void showGrade(int row) {
+        Integer mark = (Integer) model.getValueAt(row, MARKS);
+        GradingPolicy policy = simulator.getPolicy();
+        updating = true;
+        model.setValueAt(mark == null ? "-" : policy.letterGrade(mark), row, GRADE);
+        model.setValueAt(mark == null ? "-" : String.format("%.2f", policy.points(mark)), row, POINTS);
+        updating = false;
+    }
+
+    private void updateResults() {
+        gpaLabel.setText("Semester GPA: " + String.format("%.2f", simulator.gpa()));
+        cgpaLabel.setText("CGPA: " + String.format("%.2f", simulator.cgpa()) +
+                (simulator.getHistoryCredits() > 0 ? "  (" + simulator.getHistoryCredits() + " prior credits)" : ""));
+        classLabel.setText("Classification: " + simulator.classification());
+        creditsLabel.setText("Credits: " + simulator.getGradedCredits() + " graded, " + simulator.getPendingCredits() + " remaining");
+    }
+
+    private void loadHistory() {
+        String name = nameField.getText().trim();
+        if (name.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "Enter Student Name first!");
+            return;
+        }
+        List<SemesterRecord> history = new ArrayList<>();
+        try {
+            for (SemesterRecord rec : store.load(name)) {
+                if (rec.studentName.trim().equalsIgnoreCase(name)) history.add(rec);
+            }
+        } catch (Exception e) {
+            JOptionPane.showMessageDialog(this, "Error reading records.");
+            return;
+        }
+        simulator.setHistory(history);
+        updateResults();
+        if (history.isEmpty()) JOptionPane.showMessageDialog(this, "No records found for " + name);
+    }
+
+    private void solveTarget() {
+        double target;
+        try {
+            target = Double.parseDouble(targetField.getText().trim());
+        } catch (NumberFormatException e) {
+            targetLabel.setText("Enter a target GPA.");
+            return;
+        }
+        int mark = simulator.minimumMarksFor(target);
+        if (simulator.getPendingCredits() <= 0) {
+            targetLabel.setText(mark == 0 ? "Target already met." : "No remaining subjects left to reach it.");
+        } else if (mark < 0) {
+            targetLabel.setText("Not reachable with remaining subjects.");
+        } else {
+            targetLabel.setText("Need at least " + mark + " marks (" + simulator.getPolicy().letterGrade(mark) + ") in each remaining subject.");
+        }
+    }
+
+    private void useAsRecord() {
+        String name = nameField.getText().trim();
+        String semester = semesterField.getText().trim();
+        if (name.isEmpty() || semester.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "Enter Student Name and Semester!");
+            return;
+        }
+        if (model.getRowCount() == 0 || simulator.getPendingCredits() > 0) {
+            JOptionPane.showMessageDialog(this, "Enter marks for every subject first!");
+            return;
+        }
+        GradingPolicy policy = simulator.getPolicy();
+        List<Subject> subjects = new ArrayList<>();
+        for (int row = 0; row < model.getRowCount(); row++) {
+            Object subName = model.getValueAt(row, SUBJECT);
+            if (subName == null || subName.toString().trim().isEmpty()) {
+                JOptionPane.showMessageDialog(this, "Every subject needs a name!");
+                return;
+            }
+            subjects.add(new Subject(subName.toString(), (Integer) model.getValueAt(row, MARKS),
+                    (Integer) model.getValueAt(row, CREDITS), policy));
+        }
+        onUseRecord.accept(new SemesterRecord(name, semester, simulator.gpa(), simulator.classification(), subjects, policy.name));
+    }
+}
+
 public class ComsatsStudentHelper extends JFrame {
     private JTextField nameField, semesterField, subjectField;
+    private JComboBox<String> policyBox;
     private JTextArea outputArea;
     private JTable recordsTable;
     private DefaultTableModel tableModel;
-    private FileHandler fileHandler = new FileHandler();
+    private RecordStore store;
+    private StudentFileWatcher fileWatcher;
     private User currentUser;
     private JTabbedPane tabbedPane;
-    private JPanel mainPanel, statsPanel;
+    private JPanel mainPanel, statsPanel, analyticsPanel;
     private JTextArea statsArea;
+    private DefaultTableModel analyticsModel;
+    private CourseAnalytics courseAnalytics = new CourseAnalytics();
+    private HistoryCache historyCache = new HistoryCache(256, 20000);
+    private Map<String, Integer> classCount = new HashMap<>();
+    private int totalRecords;
+    private double totalGPA;
 
     private String currentStudentName;
     private String currentSemester;
     private List<Subject> currentSubjects = new ArrayList<>();
     private SemesterRecord currentRecord;
 
-    public ComsatsStudentHelper(User currentUser) {
+    public ComsatsStudentHelper(User currentUser, RecordClient client) {
         this.currentUser = currentUser;
+        if (client != null) {
+            store = client;
+        } else {
+            FileHandler local = new FileHandler();
+            if (local.getRecoveryReport() != null) {
+                JOptionPane.showMessageDialog(null, local.getRecoveryReport(), "Records Recovered", JOptionPane.WARNING_MESSAGE);
+            }
+            try {
+                fileWatcher = new StudentFileWatcher(local.getFilename(), local::checkForExternalChanges);
+            } catch (IOException e) {
+                System.out.println("Could not watch records file for outside changes.");
+            }
+            store = local;
+        }
 
         setTitle("COMSATS Student GPA Helper - Logged in as: " + currentUser.getUsername() +
-                (currentUser.isAdmin() ? " (Admin)" : " (User)"));
+                (currentUser.isAdmin() ? " (Admin)" : " (User)") + (client != null ? " - Shared Record Server" : ""));
         setSize(1400, 900);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLocationRelativeTo(null);
@@ -523,6 +2926,7 @@ public class ComsatsStudentHelper extends JFrame {
         logoutBtn.addActionListener(e -> {
             int confirm = JOptionPane.showConfirmDialog(this, "Are you sure you want to logout?", "Logout", JOptionPane.YES_NO_OPTION);
             if (confirm == JOptionPane.YES_OPTION) {
+                if (fileWatcher != null) fileWatcher.close();
                 dispose();
                 new WelcomeFrame().setVisible(true);
             }
@@ -551,6 +2955,12 @@ public class ComsatsStudentHelper extends JFrame {
         subjectField = new JTextField();
         inputPanel.add(subjectField);
 
+        inputPanel.add(new JLabel("Grading Policy:"));
+        policyBox = new JComboBox<>();
+        policyBox.addItem("Auto (by semester)");
+        for (String policyName : GradingPolicies.names()) policyBox.addItem(policyName);
+        inputPanel.add(policyBox);
+
         JButton clearBtn = new JButton("Clear Fields");
         clearBtn.addActionListener(e -> clearFields());
         inputPanel.add(clearBtn);
@@ -576,7 +2986,7 @@ public class ComsatsStudentHelper extends JFrame {
         tableScroll.setBorder(BorderFactory.createTitledBorder("All Records"));
         mainPanel.add(tableScroll, BorderLayout.CENTER);
 
-        JPanel buttonPanel = new JPanel(new GridLayout(4, 2, 20, 20));
+        JPanel buttonPanel = new JPanel(new GridLayout(6, 2, 20, 20));
         buttonPanel.setBorder(BorderFactory.createTitledBorder("Actions"));
 
         Font btnFont = new Font("Arial", Font.BOLD, 16);
@@ -589,8 +2999,13 @@ public class ComsatsStudentHelper extends JFrame {
         JButton refreshBtn = new JButton("Refresh Table");
         JButton aboutComsats = new JButton("About COMSATS");
         JButton aboutDev = new JButton("About Developer");
+        JButton regradeBtn = new JButton("Re-grade All Records");
+        JButton undoBtn = new JButton("Undo Last Change");
+        JButton redoBtn = new JButton("Redo");
+        JButton restoreBtn = new JButton("Restore to Point in Time");
 
-        JButton[] buttons = {calcBtn, saveBtn, viewHistoryBtn, deleteBtn, refreshBtn, aboutComsats, aboutDev};
+        JButton[] buttons = {calcBtn, saveBtn, viewHistoryBtn, deleteBtn, refreshBtn, regradeBtn,
+                undoBtn, redoBtn, restoreBtn, aboutComsats, aboutDev};
         for (JButton btn : buttons) {
             btn.setFont(btnFont);
             btn.setBackground(btnColor);
@@ -604,13 +3019,21 @@ public class ComsatsStudentHelper extends JFrame {
         if (!currentUser.isAdmin()) {
             saveBtn.setEnabled(false);
             deleteBtn.setEnabled(false);
+            regradeBtn.setEnabled(false);
+            undoBtn.setEnabled(false);
+            redoBtn.setEnabled(false);
+            restoreBtn.setEnabled(false);
         }
 
         calcBtn.addActionListener(e -> calculateWeightedGPA());
         saveBtn.addActionListener(e -> saveRecord());
         viewHistoryBtn.addActionListener(e -> viewStudentHistory());
         deleteBtn.addActionListener(e -> deleteStudentRecord());
-        refreshBtn.addActionListener(e -> refreshTable());
+        regradeBtn.addActionListener(e -> regradeAllRecords());
+        undoBtn.addActionListener(e -> undoLastChange());
+        redoBtn.addActionListener(e -> redoLastChange());
+        restoreBtn.addActionListener(e -> restoreToPointInTime());
+        refreshBtn.addActionListener(e -> reloadAll());
         aboutComsats.addActionListener(e -> JOptionPane.showMessageDialog(this,
                 "COMSATS University Islamabad\nEstablished: 1998\nLeader in IT & Engineering", "About COMSATS", JOptionPane.INFORMATION_MESSAGE));
         aboutDev.addActionListener(e -> JOptionPane.showMessageDialog(this,
@@ -623,8 +3046,43 @@ public class ComsatsStudentHelper extends JFrame {
         statsPanel.add(new JScrollPane(statsArea), BorderLayout.CENTER);
         tabbedPane.addTab("Statistics", statsPanel);
 
-        refreshTable();
-        refreshStats();
+        analyticsPanel = new JPanel(new BorderLayout());
+        analyticsModel = new DefaultTableModel(new Object[]{"Subject", "Enrolments", "Mean", "Median", "Fail Rate",
+                "Credits", "Contribution", "Grade Histogram"}, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) { return false; }
+        };
+        JTable analyticsTable = new JTable(analyticsModel);
+        analyticsTable.setRowHeight(28);
+        analyticsTable.getTableHeader().setFont(new Font("Arial", Font.BOLD, 15));
+        analyticsTable.getTableHeader().setBackground(new Color(57, 49, 133));
+        analyticsTable.getTableHeader().setForeground(Color.WHITE);
+        JScrollPane analyticsScroll = new JScrollPane(analyticsTable);
+        analyticsScroll.setBorder(BorderFactory.createTitledBorder("Per-Course Grade Distribution"));
+        analyticsPanel.add(analyticsScroll, BorderLayout.CENTER);
+        tabbedPane.addTab("Course Analytics", analyticsPanel);
+
+        tabbedPane.addTab("What-If Simulator", new WhatIfPanel(store, this::useSimulatedRecord));
+
+        // Events may come from a server reader thread or a background re-grade, so views are updated on the EDT.
+        store.addListener(new RecordStoreListener() {
+            @Override
+            public void recordSaved(SemesterRecord record) {
+                SwingUtilities.invokeLater(() -> recordAdded(record));
+            }
+
+            @Override
+            public void recordsDeleted(String studentName, List<SemesterRecord> removed) {
+                SwingUtilities.invokeLater(() -> recordsRemoved(studentName, removed));
+            }
+
+            @Override
+            public void storeReplaced(List<SemesterRecord> records) {
+                SwingUtilities.invokeLater(() -> showRecords(records));
+            }
+        });
+
+        reloadAll();
     }
 
     private void clearFields() {
@@ -653,16 +3111,14 @@ public class ComsatsStudentHelper extends JFrame {
             return;
         }
 
+        GradingPolicy policy = policyBox.getSelectedIndex() > 0
+                ? GradingPolicies.get((String) policyBox.getSelectedItem())
+                : GradingPolicies.forSemester(currentSemester);
+
         currentSubjects.clear();
         double totalPoints = 0;
         int totalCredits = 0;
 
-        StringBuilder result = new StringBuilder("=== GPA CALCULATION RESULT ===\n\n");
-        result.append("Student: ").append(currentStudentName).append("\n");
-        result.append("Semester: ").append(currentSemester).append("\n\n");
-        result.append(String.format("%-30s %-8s %-8s %-8s\n", "Subject", "Marks", "Credits", "Grade"));
-        result.append("-----------------------------------------------------------------\n");
-
         for (int i = 0; i < numSubjects; i++) {
             String subName = JOptionPane.showInputDialog(this, "Enter Subject " + (i + 1) + " Name:");
             if (subName == null || subName.trim().isEmpty()) return;
@@ -674,27 +3130,52 @@ public class ComsatsStudentHelper extends JFrame {
             int credits = getValidInput("Enter credit hours for " + subName + " (1-6):", 1, 6);
             if (credits == -1) return;
 
-            Subject subject = new Subject(subName, marks, credits);
+            Subject subject = new Subject(subName, marks, credits, policy);
             currentSubjects.add(subject);
 
             totalPoints += subject.points * credits;
             totalCredits += credits;
-
-            result.append(String.format("%-30s %-8d %-8d %-8s\n", subName, marks, credits, subject.letterGrade));
         }
 
         double gpa = totalCredits > 0 ? totalPoints / totalCredits : 0.0;
-        String classification = classifyGPA(gpa);
+        String classification = policy.classify(gpa);
+
+        currentRecord = new SemesterRecord(currentStudentName, currentSemester, gpa, classification, currentSubjects, policy.name);
+        showResult(currentRecord);
+
+        refreshStats();
+    }
 
+    private void showResult(SemesterRecord record) {
+        int totalCredits = 0;
+        StringBuilder result = new StringBuilder("=== GPA CALCULATION RESULT ===\n\n");
+        result.append("Student: ").append(record.studentName).append("\n");
+        result.append("Semester: ").append(record.semester).append("\n");
+        result.append("Policy: ").append(record.policy).append("\n\n");
+        result.append(String.format("%-30s %-8s %-8s %-8s\n", "Subject", "Marks", "Credits", "Grade"));
+        result.append("-----------------------------------------------------------------\n");
+        for (Subject sub : record.subjects) {
+            result.append(String.format("%-30s %-8d %-8d %-8s\n", sub.name, sub.marks, sub.credits, sub.letterGrade));
+            totalCredits += sub.credits;
+        }
         result.append("-----------------------------------------------------------------\n");
         result.append("Total Credits: ").append(totalCredits).append("\n");
-        result.append("Weighted GPA: ").append(String.format("%.2f", gpa)).append("\n");
-        result.append("Classification: ").append(classification).append("\n");
-
-        currentRecord = new SemesterRecord(currentStudentName, currentSemester, gpa, classification, currentSubjects);
+        result.append("Weighted GPA: ").append(String.format("%.2f", record.gpa)).append("\n");
+        result.append("Classification: ").append(record.classification).append("\n");
         outputArea.setText(result.toString());
+    }
 
-        refreshStats();
+    private void useSimulatedRecord(SemesterRecord record) {
+        currentStudentName = record.studentName;
+        currentSemester = record.semester;
+        currentSubjects.clear();
+        currentSubjects.addAll(record.subjects);
+        currentRecord = record;
+        nameField.setText(record.studentName);
+        semesterField.setText(record.semester);
+        subjectField.setText(String.valueOf(record.subjects.size()));
+        showResult(record);
+        tabbedPane.setSelectedComponent(mainPanel);
     }
 
     private int getValidInput(String message, int min, int max) {
@@ -711,13 +3192,6 @@ public class ComsatsStudentHelper extends JFrame {
         }
     }
 
-    private String classifyGPA(double gpa) {
-        if (gpa >= 3.66) return "Excellent";
-        else if (gpa >= 3.00) return "Good";
-        else if (gpa >= 2.00) return "Average";
-        else if (gpa > 0) return "Probation";
-        else return "Fail";
-    }
 
     private void saveRecord() {
         if (currentRecord == null) {
@@ -728,10 +3202,10 @@ public class ComsatsStudentHelper extends JFrame {
             JOptionPane.showMessageDialog(this, "Only Admin can save records!");
             return;
         }
-        if (fileHandler.save(currentRecord)) {
+        if (store.save(currentRecord)) {
             JOptionPane.showMessageDialog(this, "Semester record saved successfully!");
-            refreshTable();
-            refreshStats();
+        } else {
+            JOptionPane.showMessageDialog(this, "Could not save the record.");
         }
     }
 
@@ -739,34 +3213,17 @@ public class ComsatsStudentHelper extends JFrame {
         String name = JOptionPane.showInputDialog(this, "Enter student name to view history:");
         if (name == null || name.trim().isEmpty()) return;
 
-        List<SemesterRecord> history = new ArrayList<>();
-        try (Scanner sc = new Scanner(new File("students.txt"))) {
-            while (sc.hasNextLine()) {
-                String line = sc.nextLine().trim();
-                if (line.startsWith("Name: " + name.trim())) {
-                    String semester = sc.nextLine().trim().substring(10);
-                    double gpa = Double.parseDouble(sc.nextLine().trim().substring(5));
-                    String classification = sc.nextLine().trim().substring(15);
-                    List<Subject> subjects = new ArrayList<>();
-                    sc.nextLine(); // "Subjects:"
-                    while (sc.hasNextLine()) {
-                        String subLine = sc.nextLine().trim();
-                        if (subLine.equals("------------------------")) break;
-                        if (subLine.startsWith("  ")) {
-                            String[] parts = subLine.substring(2).split(" \\| ");
-                            String subName = parts[0];
-                            int marks = Integer.parseInt(parts[1].substring(7));
-                            int credits = Integer.parseInt(parts[2].substring(9));
-                            subjects.add(new Subject(subName, marks, credits));
-                        }
-                    }
-                    history.add(new SemesterRecord(name.trim(), semester, gpa, classification, subjects));
-                }
+        List<SemesterRecord> history = historyCache.get(name);
+        if (history == null) {
+            try {
+                history = store.load(name.trim());
+            } catch (Exception e) {
+                JOptionPane.showMessageDialog(this, "Error reading records.");
+                return;
             }
-        } catch (Exception e) {
-            JOptionPane.showMessageDialog(this, "Error reading records.");
-            return;
+            historyCache.put(name, history);
         }
+        refreshStats();
 
         if (history.isEmpty()) {
             JOptionPane.showMessageDialog(this, "No records found for " + name);
@@ -790,52 +3247,141 @@ public class ComsatsStudentHelper extends JFrame {
         if (name == null || name.trim().isEmpty()) return;
         int confirm = JOptionPane.showConfirmDialog(this, "This will delete ALL records for " + name + ".\nContinue?", "Confirm Delete", JOptionPane.YES_NO_OPTION);
         if (confirm == JOptionPane.YES_OPTION) {
-            if (fileHandler.delete(name.trim())) {
+            if (store.delete(name.trim())) {
                 JOptionPane.showMessageDialog(this, "All records deleted.");
-                refreshTable();
-                refreshStats();
             } else {
                 JOptionPane.showMessageDialog(this, "Student not found.");
             }
         }
     }
 
-    private void refreshTable() {
-        tableModel.setRowCount(0);
-        try (Scanner sc = new Scanner(new File("students.txt"))) {
-            while (sc.hasNextLine()) {
-                String line = sc.nextLine().trim();
-                if (line.startsWith("Name: ")) {
-                    String student = line.substring(6);
-                    String semester = sc.nextLine().trim().substring(10);
-                    String gpaStr = sc.nextLine().trim().substring(5);
-                    String classification = sc.nextLine().trim().substring(15);
-                    while (sc.hasNextLine() && !sc.nextLine().trim().equals("------------------------")) {}
-                    tableModel.addRow(new Object[]{student, semester, gpaStr, classification});
+    private void regradeAllRecords() {
+        Object choice = JOptionPane.showInputDialog(this, "Re-grade every saved record under which policy?",
+                "Re-grade All Records", JOptionPane.QUESTION_MESSAGE, null,
+                GradingPolicies.names().toArray(), GradingPolicies.getDefault().name);
+        if (choice == null) return;
+        GradingPolicy policy = GradingPolicies.get((String) choice);
+        int confirm = JOptionPane.showConfirmDialog(this, "This will recalculate ALL saved records under " + policy.name + ".\nContinue?",
+                "Confirm Re-grade", JOptionPane.YES_NO_OPTION);
+        if (confirm != JOptionPane.YES_OPTION) return;
+
+        new SwingWorker<Integer, Void>() {
+            @Override
+            protected Integer doInBackground() throws Exception {
+                int regraded = store.regradeAll(policy.name);
+                if (regraded < 0) throw new IOException("Could not rewrite records");
+                return regraded;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    JOptionPane.showMessageDialog(ComsatsStudentHelper.this, get() + " records re-graded under " + policy.name + ".");
+                } catch (Exception e) {
+                    JOptionPane.showMessageDialog(ComsatsStudentHelper.this, "Re-grade failed. Records were not changed.");
                 }
             }
-        } catch (Exception ignored) {}
+        }.execute();
     }
 
-    private void refreshStats() {
-        Map<String, Integer> classCount = new HashMap<>(Map.of("Excellent", 0, "Good", 0, "Average", 0, "Probation", 0, "Fail", 0));
-        int totalRecords = 0;
-        double totalGPA = 0;
+    private void undoLastChange() {
+        String label = store.peekUndo();
+        if (label == null) {
+            JOptionPane.showMessageDialog(this, "Nothing to undo.");
+        } else if (store.undo() != null) {
+            JOptionPane.showMessageDialog(this, "Undone: " + label);
+        } else {
+            JOptionPane.showMessageDialog(this, "Undo failed. Records were not changed.");
+        }
+    }
 
-        try (Scanner sc = new Scanner(new File("students.txt"))) {
-            while (sc.hasNextLine()) {
-                String line = sc.nextLine().trim();
-                if (line.startsWith("Semester: ")) {
-                    totalRecords++;
-                    double gpa = Double.parseDouble(sc.nextLine().trim().substring(5));
-                    totalGPA += gpa;
-                    String classification = sc.nextLine().trim().substring(15);
-                    classCount.put(classification, classCount.get(classification) + 1);
-                    while (sc.hasNextLine() && !sc.nextLine().trim().equals("------------------------")) {}
-                }
-            }
-        } catch (Exception ignored) {}
+    private void redoLastChange() {
+        String label = store.peekRedo();
+        if (label == null) {
+            JOptionPane.showMessageDialog(this, "Nothing to redo.");
+        } else if (store.redo() != null) {
+            JOptionPane.showMessageDialog(this, "Redone: " + label);
+        } else {
+            JOptionPane.showMessageDialog(this, "Redo failed. Records were not changed.");
+        }
+    }
+
+    private void restoreToPointInTime() {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        String input = JOptionPane.showInputDialog(this, "Restore records as they were at (yyyy-MM-dd HH:mm:ss):",
+                format.format(new Date()));
+        if (input == null || input.trim().isEmpty()) return;
+        long time;
+        try {
+            time = format.parse(input.trim()).getTime();
+        } catch (ParseException e) {
+            JOptionPane.showMessageDialog(this, "Invalid date! Use yyyy-MM-dd HH:mm:ss.");
+            return;
+        }
+        int confirm = JOptionPane.showConfirmDialog(this, "Restore ALL records to " + input.trim() + "?\nYou can undo this afterwards.",
+                "Confirm Restore", JOptionPane.YES_NO_OPTION);
+        if (confirm != JOptionPane.YES_OPTION) return;
+        if (store.restoreTo(time)) {
+            JOptionPane.showMessageDialog(this, "Records restored.");
+        } else {
+            JOptionPane.showMessageDialog(this, "Restore failed. Records were not changed.");
+        }
+    }
+
+    private void reloadAll() {
+        List<SemesterRecord> records;
+        try {
+            records = store.load(null);
+        } catch (Exception e) {
+            records = new ArrayList<>();
+        }
+        showRecords(records);
+    }
+
+    private void showRecords(List<SemesterRecord> records) {
+        tableModel.setRowCount(0);
+        classCount = new HashMap<>(Map.of("Excellent", 0, "Good", 0, "Average", 0, "Probation", 0, "Fail", 0));
+        totalRecords = 0;
+        totalGPA = 0;
+        for (SemesterRecord rec : records) {
+            tableModel.addRow(new Object[]{rec.studentName, rec.semester, String.format("%.2f", rec.gpa), rec.classification});
+            countRecord(rec, 1);
+        }
+        courseAnalytics.rebuild(records);
+        historyCache.clear();
+        refreshStats();
+        refreshAnalyticsTable();
+    }
+
+    private void recordAdded(SemesterRecord rec) {
+        tableModel.addRow(new Object[]{rec.studentName, rec.semester, String.format("%.2f", rec.gpa), rec.classification});
+        countRecord(rec, 1);
+        courseAnalytics.add(rec);
+        historyCache.invalidate(rec.studentName);
+        refreshStats();
+        refreshAnalyticsTable();
+    }
+
+    private void recordsRemoved(String studentName, List<SemesterRecord> removed) {
+        for (int row = tableModel.getRowCount() - 1; row >= 0; row--) {
+            if (tableModel.getValueAt(row, 0).toString().trim().startsWith(studentName)) tableModel.removeRow(row);
+        }
+        for (SemesterRecord rec : removed) {
+            countRecord(rec, -1);
+            courseAnalytics.remove(rec);
+            historyCache.invalidate(rec.studentName);
+        }
+        refreshStats();
+        refreshAnalyticsTable();
+    }
 
+    private void countRecord(SemesterRecord rec, int sign) {
+        totalRecords += sign;
+        totalGPA += sign * rec.gpa;
+        classCount.merge(rec.classification, sign, Integer::sum);
+    }
+
+    private void refreshStats() {
         StringBuilder stats = new StringBuilder("=== OVERALL STATISTICS ===\n\n");
         stats.append("Total Semester Records: ").append(totalRecords).append("\n");
         if (totalRecords > 0) {
@@ -850,11 +3396,35 @@ public class ComsatsStudentHelper extends JFrame {
                      .append(" records (").append(String.format("%.1f", percent)).append("%)\n");
             }
         }
+        stats.append("\nStudent History Cache: ").append(historyCache.stats()).append("\n");
 
         statsArea.setText(stats.toString());
     }
 
+    private void refreshAnalyticsTable() {
+        analyticsModel.setRowCount(0);
+        for (CourseStats stats : courseAnalytics.getCourses()) {
+            analyticsModel.addRow(new Object[]{stats.subject, stats.enrolments,
+                    String.format("%.2f", stats.mean()), String.format("%.1f", stats.median()),
+                    String.format("%.1f%%", stats.failRate()), stats.totalCredits,
+                    String.format("%.1f%%", courseAnalytics.contribution(stats)), stats.histogram()});
+        }
+    }
+
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--measure-heap")) {
+            CompactRecordStore.measureHeap(args.length > 1 ? Integer.parseInt(args[1]) : 200000);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--server")) {
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : RecordProtocol.port();
+            try {
+                new RecordServer(port).run();
+            } catch (IOException e) {
+                System.out.println("Could not start record server: " + e.getMessage());
+            }
+            return;
+        }
         SwingUtilities.invokeLater(() -> new WelcomeFrame().setVisible(true));
     }
 }